@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.file.Path;
+//========================================================================================================
+/**
+ * Keeps the fleet in one database file in the binary fleet format of FleetCodec. The whole fleet is
+ * written to a temporary file, forced to the disk and renamed over the database, and the database's
+ * checksum is checked when it is loaded. Databases written with Java serialization by earlier
+ * versions of the program are still loaded.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class BinaryFleetRepository implements FleetRepository {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The database file
+     */
+    private final Path file;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a repository kept in the given file.
+     * @param databaseFile The database file
+     */
+    public BinaryFleetRepository(Path databaseFile) {
+
+        file = databaseFile;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the name of the format.
+     * @return "Binary"
+     */
+    @Override
+    public String getName() {
+
+        return "Binary";
+
+    } // end of the getName method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the database file.
+     * @return The database file
+     */
+    @Override
+    public Path getFile() {
+
+        return file;
+
+    } // end of the getFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation from the database header.
+     * @return The journal generation, 0 if the database has none, or -1 if there is no database
+     */
+    @Override
+    public long readGeneration() {
+
+        return FleetCodec.readGeneration(file);
+
+    } // end of the readGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the fleet from the database.
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the database cannot be read or is damaged
+     */
+    @Override
+    public long load(Fleet fleet) throws IOException {
+
+        return FleetCodec.readFleet(file, fleet);
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the snapshot to a temporary file and renames it over the database.
+     * @param snapshot The snapshot of the fleet
+     * @param journalGeneration The generation of the journal that records changes made after the snapshot
+     * @throws IOException If the database cannot be written
+     */
+    @Override
+    public void save(FleetSnapshot snapshot, long journalGeneration) throws IOException {
+
+        Path temporaryFile = FleetRepository.temporaryFile(file);
+        FleetCodec.writeFleet(snapshot, temporaryFile, journalGeneration);
+        FleetRepository.replaceFile(temporaryFile, file);
+
+    } // end of the save method
+    //----------------------------------------------------------------------------------------------------
+} // end of the BinaryFleetRepository class
+//========================================================================================================
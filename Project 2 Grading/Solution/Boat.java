@@ -1,9 +1,16 @@
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 //========================================================================================================
 /**
  * Represents a boat with details about its type, name, year of manufacture, make/model, length,
  * purchase price, and expenses. This class allows for managing expenses within the limits of the boat's
- * purchase price and includes functionality for displaying the boat's information.
+ * purchase price and includes functionality for displaying the boat's information. Money is kept in
+ * whole cents, so expenses are checked against the purchase price exactly.
  *
  * @author Hashim Shahzad Khan
  */
@@ -14,6 +21,31 @@ public class Boat implements Serializable {
      */
     private static final long serialVersionUID = 1L;
     //----------------------------------------------------------------------------------------------------
+    /**
+     * The serialized form still holds the purchase price and expenses as dollars in doubles, so
+     * database files written before money was kept in cents can be read back, and older versions of the
+     * program can read new files. The exact amounts in cents are written alongside and preferred when
+     * present.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("type", BoatType.class),
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("yearOfManufacture", int.class),
+            new ObjectStreamField("makeModel", String.class),
+            new ObjectStreamField("lengthInFeet", int.class),
+            new ObjectStreamField("purchasePrice", double.class),
+            new ObjectStreamField("expenses", double.class),
+            new ObjectStreamField("purchasePriceCents", long.class),
+            new ObjectStreamField("expensesCents", long.class)
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The largest amount of money, in cents, a price or an expense may be: 2^53, beyond which a double
+     * no longer holds every whole number of cents, and far enough from the limit of a long that adding
+     * two amounts cannot overflow
+     */
+    static final long MAX_CENTS = 1L << 53;
+    //----------------------------------------------------------------------------------------------------
     /**
      * The type of boat (SAILING or POWER)
      */
@@ -40,14 +72,31 @@ public class Boat implements Serializable {
     private int lengthInFeet;
     //----------------------------------------------------------------------------------------------------
     /**
-     * The purchase price of the boat
+     * The purchase price of the boat, in cents
+     */
+    private transient long purchasePriceCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The expenses spent on the boat, in cents. Updated only by compare-and-set, so that concurrent
+     * expenses cannot exceed the purchase price.
+     */
+    private transient volatile long expensesCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Atomically updates expensesCents
+     */
+    private static final AtomicLongFieldUpdater<Boat> EXPENSES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Boat.class, "expensesCents");
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The fleet this boat belongs to, told about every expense so it can keep its totals current
      */
-    private double purchasePrice;
+    private transient volatile Fleet fleet;
     //----------------------------------------------------------------------------------------------------
     /**
-     * The expenses spent on the boat
+     * The remaining budget the owning fleet's index last filed this boat under, in cents
      */
-    private double expenses;
+    private transient long indexedBudgetCents;
     //----------------------------------------------------------------------------------------------------
     /**
      * Default constructor that initializes the boat with default values.
@@ -59,8 +108,8 @@ public class Boat implements Serializable {
         yearOfManufacture = 0;
         makeModel = "";
         lengthInFeet = 0;
-        purchasePrice = 0.0;
-        expenses = 0.0;
+        purchasePriceCents = 0;
+        expensesCents = 0;
 
     } // end of the default constructor
     //----------------------------------------------------------------------------------------------------
@@ -80,11 +129,108 @@ public class Boat implements Serializable {
         yearOfManufacture = year;
         makeModel = model;
         lengthInFeet = length;
-        purchasePrice = price;
-        expenses = 0.0;
+        purchasePriceCents = toCents(price);
+        expensesCents = 0;
 
     } // end of the constructor with parameters
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that restores a saved boat, including the expenses already spent on it.
+     * @param boatType The type of the boat (SAILING or POWER)
+     * @param nameOfBoat The name of the boat
+     * @param year The year the boat was manufactured
+     * @param model The make/model of the boat
+     * @param length The length of the boat in feet
+     * @param price The purchase price of the boat
+     * @param spent The expenses already spent on the boat
+     */
+    public Boat(BoatType boatType, String nameOfBoat, int year, String model, int length, double price,
+                double spent) {
+
+        this(boatType, nameOfBoat, year, model, length, price);
+        expensesCents = toCents(spent);
+
+    } // end of the constructor with expenses
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Creates a boat whose purchase price and expenses are given in cents.
+     * @param boatType The type of the boat (SAILING or POWER)
+     * @param nameOfBoat The name of the boat
+     * @param year The year the boat was manufactured
+     * @param model The make/model of the boat
+     * @param length The length of the boat in feet
+     * @param priceCents The purchase price of the boat, in cents
+     * @param spentCents The expenses already spent on the boat, in cents
+     * @return The new boat
+     */
+    static Boat withCents(BoatType boatType, String nameOfBoat, int year, String model, int length,
+                          long priceCents, long spentCents) {
+
+        Boat boat = new Boat(boatType, nameOfBoat, year, model, length, 0.0);
+        boat.purchasePriceCents = priceCents;
+        boat.expensesCents = spentCents;
+
+        return boat;
+
+    } // end of the withCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Converts an amount of money to whole cents. The amount is checked first, as Math.round would
+     * quietly turn infinity into the largest long and NaN into zero.
+     * @param amount The amount in dollars
+     * @return The amount rounded to the nearest cent
+     * @throws IllegalArgumentException If the amount is not a number, infinite, or more than MAX_CENTS
+     *                                  in either direction
+     */
+    static long toCents(double amount) {
+
+        // Written so that NaN fails the test too
+        if (!(Math.abs(amount) <= MAX_CENTS / 100.0)) {
+            throw new IllegalArgumentException("Amount out of range: " + amount);
+        }
+
+        return Math.round(amount * 100);
+
+    } // end of the toCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Converts an expense to whole cents, checking it first.
+     * @param amount The expense in dollars
+     * @return The expense rounded to the nearest cent
+     * @throws IllegalArgumentException If the expense is negative, not a number, infinite or too large
+     */
+    static long toExpenseCents(double amount) {
+
+        long amountCents = toCents(amount);
+        checkExpenseCents(amountCents);
+
+        return amountCents;
+
+    } // end of the toExpenseCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that an expense in cents is neither negative nor more than MAX_CENTS.
+     * @param amountCents The expense in cents
+     * @throws IllegalArgumentException If the expense is out of range
+     */
+    static void checkExpenseCents(long amountCents) {
+
+        if (amountCents < 0 || amountCents > MAX_CENTS) {
+            throw new IllegalArgumentException("Expense out of range: " + amountCents + " cents");
+        }
+
+    } // end of the checkExpenseCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the type of the boat.
+     * @return The type of the boat (SAILING or POWER)
+     */
+    public BoatType getType() {
+
+        return type;
+
+    } // end of the getType method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Returns the name of the boat.
      * @return The name of the boat
@@ -95,31 +241,142 @@ public class Boat implements Serializable {
 
     } // end of the getName method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the year the boat was manufactured.
+     * @return The year of manufacture
+     */
+    public int getYearOfManufacture() {
+
+        return yearOfManufacture;
+
+    } // end of the getYearOfManufacture method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the make and model of the boat.
+     * @return The make/model of the boat
+     */
+    public String getMakeModel() {
+
+        return makeModel;
+
+    } // end of the getMakeModel method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the length of the boat.
+     * @return The length of the boat in feet
+     */
+    public int getLengthInFeet() {
+
+        return lengthInFeet;
+
+    } // end of the getLengthInFeet method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Checks if an expense can be added to the boat without exceeding its purchase price.
-     * @param amount The amount to be added as an expense
+     * @param amount The amount to be added as an expense, rounded to the nearest cent
      * @return True if the expense can be added, otherwise false
+     * @throws IllegalArgumentException If the amount is negative, not a number, infinite or too large
      */
     public boolean canSpend(double amount) {
 
-        return (expenses + amount) <= purchasePrice;
+        return canSpendCents(toExpenseCents(amount));
 
     } // end of the canSpend method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks if an expense in cents can be added to the boat without exceeding its purchase price.
+     * @param amountCents The amount to be added as an expense, in cents
+     * @return True if the expense can be added, otherwise false
+     * @throws IllegalArgumentException If the amount is negative or more than MAX_CENTS
+     */
+    public boolean canSpendCents(long amountCents) {
+
+        checkExpenseCents(amountCents);
+
+        return amountCents <= purchasePriceCents - expensesCents;
+
+    } // end of the canSpendCents method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Adds an expense to the boat, ensuring it does not exceed the boat's purchase price.
-     * @param amount The amount to be added as an expense
-     * @throws IllegalArgumentException If the expense exceeds the allowed limit
+     * @param amount The amount to be added as an expense, rounded to the nearest cent
+     * @throws IllegalArgumentException If the expense exceeds the allowed limit, or is negative, not a
+     *                                  number, infinite or too large
      */
     public void addExpense(double amount) {
 
-        if (canSpend(amount)) {
-            expenses += amount;
-        } else {
+        addExpenseCents(toExpenseCents(amount));
+
+    } // end of the addExpense method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds an expense in cents to the boat, ensuring it does not exceed the boat's purchase price.
+     * @param amountCents The amount to be added as an expense, in cents
+     * @throws IllegalArgumentException If the expense exceeds the allowed limit, or is negative or more
+     *                                  than MAX_CENTS
+     */
+    public void addExpenseCents(long amountCents) {
+
+        if (!trySpendCents(amountCents)) {
             throw new IllegalArgumentException("Expense exceeds the allowed limit!");
         }
 
-    } // end of the addExpense method
+    } // end of the addExpenseCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds an expense to the boat if it does not exceed the boat's purchase price. Unlike calling
+     * canSpend and then addExpense, the check and the update happen as one atomic step.
+     * @param amount The amount to be added as an expense, rounded to the nearest cent
+     * @return True if the expense was added, false if it would exceed the purchase price
+     * @throws IllegalArgumentException If the amount is negative, not a number, infinite or too large
+     */
+    public boolean trySpend(double amount) {
+
+        return trySpendCents(toExpenseCents(amount));
+
+    } // end of the trySpend method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds an expense in cents to the boat if it does not exceed the boat's purchase price, as one
+     * atomic step. The owning fleet's total is updated too.
+     * @param amountCents The amount to be added as an expense, in cents
+     * @return True if the expense was added, false if it would exceed the purchase price
+     * @throws IllegalArgumentException If the amount is negative or more than MAX_CENTS
+     */
+    public boolean trySpendCents(long amountCents) {
+
+        Fleet owner = fleet;
+
+        return owner == null ? reserveCents(amountCents) : owner.spend(this, amountCents);
+
+    } // end of the trySpendCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds to the expenses with a compare-and-set loop, as long as the purchase price is not exceeded.
+     * The owning fleet's total is not updated; Fleet.spend does that.
+     * @param amountCents The amount to be added as an expense, in cents
+     * @return True if the expense was added, false if it would exceed the purchase price
+     * @throws IllegalArgumentException If the amount is negative or more than MAX_CENTS
+     * @throws ArithmeticException If the new expenses would not fit in a long
+     */
+    boolean reserveCents(long amountCents) {
+
+        checkExpenseCents(amountCents);
+
+        long current;
+        long updated;
+
+        do {
+            current = expensesCents;
+            if (amountCents > purchasePriceCents - current) {
+                return false;
+            }
+            updated = Math.addExact(current, amountCents);
+        } while (!EXPENSES_UPDATER.compareAndSet(this, current, updated));
+
+        return true;
+
+    } // end of the reserveCents method
     //----------------------------------------------------------------------------------------------------
     /**
      * Returns the total expenses spent on the boat.
@@ -127,20 +384,100 @@ public class Boat implements Serializable {
      */
     public double getExpenses() {
 
-        return expenses;
+        return expensesCents / 100.0;
 
     } // end of the getExpenses method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total expenses spent on the boat in cents.
+     * @return The total expenses of the boat, in cents
+     */
+    public long getExpensesCents() {
+
+        return expensesCents;
+
+    } // end of the getExpensesCents method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Returns the purchase price of the boat.
      * @return The purchase price of the boat
      */
     public double getPurchasePrice() {
 
-        return purchasePrice;
+        return purchasePriceCents / 100.0;
 
     } // end of the getPurchasePrice method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the purchase price of the boat in cents.
+     * @return The purchase price of the boat, in cents
+     */
+    public long getPurchasePriceCents() {
+
+        return purchasePriceCents;
+
+    } // end of the getPurchasePriceCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns how much can still be spent on the boat before its purchase price is reached.
+     * @return The purchase price minus the expenses
+     */
+    public double getRemainingBudget() {
+
+        return getRemainingBudgetCents() / 100.0;
+
+    } // end of the getRemainingBudget method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns how much can still be spent on the boat in cents.
+     * @return The purchase price minus the expenses, in cents
+     */
+    public long getRemainingBudgetCents() {
+
+        return purchasePriceCents - expensesCents;
+
+    } // end of the getRemainingBudgetCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the fleet that owns this boat.
+     * @return The owning fleet, or null if the boat does not belong to a fleet
+     */
+    Fleet getFleet() {
+
+        return fleet;
+
+    } // end of the getFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Sets the fleet that owns this boat. Called by the Fleet when the boat is added or removed.
+     * @param owner The owning fleet, or null if the boat no longer belongs to a fleet
+     */
+    void setFleet(Fleet owner) {
+
+        fleet = owner;
+
+    } // end of the setFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the remaining budget the owning fleet's index last filed this boat under.
+     * @return The indexed remaining budget, in cents
+     */
+    long getIndexedBudgetCents() {
+
+        return indexedBudgetCents;
+
+    } // end of the getIndexedBudgetCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records the remaining budget the owning fleet's index files this boat under.
+     * @param budgetCents The indexed remaining budget, in cents
+     */
+    void setIndexedBudgetCents(long budgetCents) {
+
+        indexedBudgetCents = budgetCents;
+
+    } // end of the setIndexedBudgetCents method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Returns a string representation of the boat, including details about the boat's type, name,
      * year of manufacture, make/model, length, purchase price, and expenses.
@@ -149,11 +486,63 @@ public class Boat implements Serializable {
     @Override
     public String toString() {
 
-        return String.format("%-8s %-20s %4d %-12s %4d' : Paid $%10.2f : Spent $%10.2f",
-                type, name, yearOfManufacture, makeModel, lengthInFeet, purchasePrice, expenses);
+        return FleetReportWriter.appendBoat(new StringBuilder(96), this, expensesCents).toString();
 
     } // end of the toString method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the boat in its original serialized form, with money as dollars in doubles, followed by
+     * the same amounts in cents.
+     * @param out The stream the boat is written to
+     * @throws IOException If the boat cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("type", type);
+        fields.put("name", name);
+        fields.put("yearOfManufacture", yearOfManufacture);
+        fields.put("makeModel", makeModel);
+        fields.put("lengthInFeet", lengthInFeet);
+        fields.put("purchasePrice", getPurchasePrice());
+        fields.put("expenses", getExpenses());
+        fields.put("purchasePriceCents", purchasePriceCents);
+        fields.put("expensesCents", expensesCents);
+        out.writeFields();
+
+    } // end of the writeObject method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a boat in its serialized form, taking money in cents if the stream holds it and converting
+     * the dollars written by earlier versions otherwise. The make/model is
+     * interned, as the other loaders do, so the boats of a deserialized fleet share it.
+     * @param in The stream the boat is read from
+     * @throws IOException If the boat cannot be read, or its price or expenses are out of range
+     * @throws ClassNotFoundException If the class of a serialized field cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+        type = (BoatType) fields.get("type", BoatType.SAILING);
+        name = (String) fields.get("name", "");
+        yearOfManufacture = fields.get("yearOfManufacture", 0);
+        String model = (String) fields.get("makeModel", "");
+        makeModel = model == null ? null : model.intern();
+        lengthInFeet = fields.get("lengthInFeet", 0);
+        try {
+            if (fields.defaulted("purchasePriceCents")) {
+                purchasePriceCents = toCents(fields.get("purchasePrice", 0.0));
+                expensesCents = toCents(fields.get("expenses", 0.0));
+            } else {
+                purchasePriceCents = fields.get("purchasePriceCents", 0L);
+                expensesCents = fields.get("expensesCents", 0L);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException("Boat " + name + ": " + e.getMessage());
+        }
+
+    } // end of the readObject method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Enum that represents the two types of boats: SAILING and POWER.
      * This enum is used to distinguish between sailing boats and power boats in the FleetManagement system.
@@ -0,0 +1,133 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+//========================================================================================================
+/**
+ * Keeps the fleet in one CSV file, in the same format as the manifests the fleet can be imported
+ * from, so the saved fleet can be read and edited with any spreadsheet or text tool. The file starts
+ * with a comment line holding the journal generation, and each boat line ends with the boat's
+ * expenses.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class CsvFleetRepository implements FleetRepository {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The start of the comment line that holds the journal generation
+     */
+    private static final String GENERATION_COMMENT = "# generation ";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The file the fleet is saved in
+     */
+    private final Path file;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a repository kept in the given file.
+     * @param csvFile The file the fleet is saved in
+     */
+    public CsvFleetRepository(Path csvFile) {
+
+        file = csvFile;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the name of the format.
+     * @return "CSV"
+     */
+    @Override
+    public String getName() {
+
+        return "CSV";
+
+    } // end of the getName method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the file the fleet is saved in.
+     * @return The file
+     */
+    @Override
+    public Path getFile() {
+
+        return file;
+
+    } // end of the getFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation from the first line of the file. A CSV file without it is a
+     * manifest to import rather than a saved fleet, and counts as no saved fleet.
+     * @return The journal generation, or -1 if there is no file or it does not start with one
+     */
+    @Override
+    public long readGeneration() {
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith(GENERATION_COMMENT)) {
+                return -1;
+            }
+            return Long.parseLong(line.substring(GENERATION_COMMENT.length()).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+
+    } // end of the readGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the fleet from the file. A saved fleet has no malformed lines, so any line that cannot be
+     * loaded means the file is damaged, and no boat is added.
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the file
+     * @throws IOException If the file cannot be read or is damaged
+     */
+    @Override
+    public long load(Fleet fleet) throws IOException {
+
+        long journalGeneration = readGeneration();
+        if (journalGeneration < 0) {
+            throw new StreamCorruptedException("Missing or invalid generation line in " + file);
+        }
+
+        Fleet loaded = new Fleet();
+        FleetCsvLoader loader = new FleetCsvLoader();
+        loader.load(file.toString(), loaded);
+        if (loader.getErrorCount() > 0) {
+            throw new StreamCorruptedException("Damaged CSV file, " + loader.getErrors().get(0));
+        }
+        fleet.addSavedBoats(loaded.getBoats());
+
+        return journalGeneration;
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the snapshot to a temporary file, forces it to the disk and renames it over the file.
+     * @param snapshot The snapshot of the fleet
+     * @param journalGeneration The generation of the journal that records changes made after the snapshot
+     * @throws IOException If the file cannot be written or a boat cannot be written as CSV
+     */
+    @Override
+    public void save(FleetSnapshot snapshot, long journalGeneration) throws IOException {
+
+        Path temporaryFile = FleetRepository.temporaryFile(file);
+        try (FileOutputStream output = new FileOutputStream(temporaryFile.toFile())) {
+            Writer out = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            FleetCsvWriter csv = new FleetCsvWriter(out);
+            csv.writeComment(GENERATION_COMMENT.substring(2) + journalGeneration);
+            csv.writeFleet(snapshot);
+            out.flush();
+            output.getFD().sync();
+        }
+        FleetRepository.replaceFile(temporaryFile, file);
+
+    } // end of the save method
+    //----------------------------------------------------------------------------------------------------
+} // end of the CsvFleetRepository class
+//========================================================================================================
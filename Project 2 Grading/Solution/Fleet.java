@@ -1,10 +1,32 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 //========================================================================================================
 /**
  * Represents a fleet of boats, including functionality for adding, removing, and retrieving boats,
- * as well as calculating the total purchase cost and expenses for all boats.
- * The fleet is stored as an ArrayList of Boat objects.
+ * as well as keeping running totals of the purchase cost and expenses for all boats.
+ * The fleet is stored as a LinkedHashMap of Boat objects keyed by their lower-cased name, so boats are
+ * found and removed by name in constant time while still being reported in the order they were added.
+ * Boats can also be found by type, or by a range of years, lengths or remaining budgets, through
+ * secondary indexes that are built by the first such query and maintained from then on.
+ * <p>
+ * A fleet is safe to use from several threads. Adding and removing boats take a write lock, while
+ * lookups and expenses share a read lock, so expenses on different boats are posted in parallel. Each
+ * boat enforces its purchase-price limit with a lock-free compare-and-set, so concurrent expenses can
+ * never take a boat over budget. Reports and analytics work on a snapshot of the fleet, so they hold
+ * no lock while they run.
  *
  * @author Hashim Shahzad Khan
  */
@@ -16,29 +38,198 @@ public class Fleet implements Serializable {
     private static final long serialVersionUID = 1L;
     //----------------------------------------------------------------------------------------------------
     /**
-     * List of boats in the fleet
+     * The serialized form of the fleet is still the ArrayList of boats, so database files written
+     * before the name index was added can be read back
      */
-    private ArrayList<Boat> boats;
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("boats", ArrayList.class)
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Boats in the fleet keyed by their lower-cased name, in the order they were added
+     */
+    private transient LinkedHashMap<String, Boat> boats;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Running total of the expenses of all boats, in whole cents so that adding and removing boats
+     * never accumulates rounding error. A LongAdder lets many threads post expenses without contending
+     * on a single counter.
+     */
+    private transient LongAdder totalSpentCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Running total of the purchase prices of all boats, in whole cents
+     */
+    private transient volatile long totalPurchaseCostCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Guards the boats: the write lock for adding and removing, the read lock for everything else
+     */
+    private transient ReentrantReadWriteLock lock;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Indexes of the boats by type, year, length and remaining budget. Built by the first query, so
+     * fleets that are never queried do not pay for it, and kept up to date from then on.
+     */
+    private transient volatile FleetIndex index;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats as an array, in the order they were added, or null if boats were added or removed since
+     * it was last built. Never changed once built, so snapshots and copies can share it.
+     */
+    private transient volatile Boat[] boatArray;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * A message for each boat loaded under a new name or not added at all, because another boat
+     * already had its name apart from case
+     */
+    private transient List<String> nameConflicts;
     //----------------------------------------------------------------------------------------------------
     /**
      * Constructor that initializes the fleet with an empty list of boats.
      */
     public Fleet() {
 
-        boats = new ArrayList<>();
+        boats = new LinkedHashMap<>();
+        totalSpentCents = new LongAdder();
+        totalPurchaseCostCents = 0;
+        lock = new ReentrantReadWriteLock();
+        index = null;
+        boatArray = null;
+        nameConflicts = new ArrayList<>();
 
     } // end of the constructor
     //----------------------------------------------------------------------------------------------------
     /**
-     * Adds a new boat to the fleet.
+     * Builds the key used to index a boat by its name, ignoring case.
+     * @param name The name of the boat
+     * @return The lower-cased name, or null if the name is null
+     */
+    private static String nameKey(String name) {
+
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+
+    } // end of the nameKey method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds a new boat to the fleet. A boat whose name (ignoring case) is already taken is not added,
+     * and a message saying so is kept for getNameConflicts.
      * @param boat The boat to be added
      */
     public void addBoat(Boat boat) {
 
-        boats.add(boat);
+        if (!addBoatIfAbsent(boat)) {
+            noteNameConflict("Did not add boat \"" + boat.getName()
+                    + "\", as another boat has the same name apart from case.");
+        }
 
     } // end of the addBoat method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds a new boat to the fleet, unless a boat with the same name (ignoring case) is already in it.
+     * @param boat The boat to be added
+     * @return True if the boat was added, false if its name is already taken
+     */
+    public boolean addBoatIfAbsent(Boat boat) {
+
+        lock.writeLock().lock();
+        try {
+            if (boats.putIfAbsent(nameKey(boat.getName()), boat) != null) {
+                return false;
+            }
+
+            boat.setFleet(this);
+            boatArray = null;
+            totalSpentCents.add(boat.getExpensesCents());
+            totalPurchaseCostCents += boat.getPurchasePriceCents();
+            if (index != null) {
+                index.add(boat);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    } // end of the addBoatIfAbsent method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds the boats read from a saved fleet. Earlier versions told names apart by case, so a saved
+     * fleet may hold boats whose names differ only in case. Rather than drop such a boat, it is added
+     * under its name followed by the first free number in brackets, such as "Moon Glow (2)", once every
+     * other boat has its own name, and a message saying so is kept for getNameConflicts. The boats are
+     * added under one lock, into a table sized for all of them, so a large fleet loads quickly.
+     * @param savedBoats The boats read from the saved fleet, in the order they were saved
+     */
+    public void addSavedBoats(Collection<Boat> savedBoats) {
+
+        List<Boat> duplicates = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            if (boats.isEmpty()) {
+                // Sized for every boat up front, so a large fleet is not rehashed over and over as it grows
+                long capacity = Math.max(16, savedBoats.size() * 4L / 3 + 1);
+                boats = new LinkedHashMap<>((int) Math.min(1 << 30, capacity));
+            }
+
+            long spentCents = 0;
+            long purchaseCostCents = 0;
+            for (Boat boat : savedBoats) {
+                if (boats.putIfAbsent(nameKey(boat.getName()), boat) != null) {
+                    duplicates.add(boat);
+                    continue;
+                }
+                boat.setFleet(this);
+                spentCents += boat.getExpensesCents();
+                purchaseCostCents += boat.getPurchasePriceCents();
+                if (index != null) {
+                    index.add(boat);
+                }
+            }
+
+            boatArray = null;
+            totalSpentCents.add(spentCents);
+            totalPurchaseCostCents += purchaseCostCents;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (Boat boat : duplicates) {
+            for (int number = 2; ; number++) {
+                String name = boat.getName() + " (" + number + ")";
+                Boat renamed = Boat.withCents(boat.getType(), name, boat.getYearOfManufacture(),
+                        boat.getMakeModel(), boat.getLengthInFeet(), boat.getPurchasePriceCents(),
+                        boat.getExpensesCents());
+                if (addBoatIfAbsent(renamed)) {
+                    noteNameConflict("Loaded boat \"" + boat.getName() + "\" as \"" + name
+                            + "\", as another boat has the same name apart from case.");
+                    break;
+                }
+            }
+        }
+
+    } // end of the addSavedBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Keeps a message about a boat that was loaded under a new name or not added.
+     * @param message The message
+     */
+    synchronized void noteNameConflict(String message) {
+
+        nameConflicts.add(message);
+
+    } // end of the noteNameConflict method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a message for each boat that addSavedBoats loaded under a new name, or that addBoat did
+     * not add, because another boat had the same name apart from case, so they can be reported.
+     * @return The messages, in the order the conflicts were found
+     */
+    public synchronized List<String> getNameConflicts() {
+
+        return new ArrayList<>(nameConflicts);
+
+    } // end of the getNameConflicts method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Removes a boat from the fleet by its name.
      * @param name The name of the boat to be removed
@@ -46,7 +237,28 @@ public class Fleet implements Serializable {
      */
     public boolean removeBoat(String name) {
 
-        return boats.removeIf(boat -> boat.getName().equalsIgnoreCase(name));
+        if (name == null) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Boat boat = boats.remove(nameKey(name));
+            if (boat == null) {
+                return false;
+            }
+
+            boat.setFleet(null);
+            boatArray = null;
+            totalSpentCents.add(-boat.getExpensesCents());
+            totalPurchaseCostCents -= boat.getPurchasePriceCents();
+            if (index != null) {
+                index.remove(boat);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
 
     } // end of the removeBoat method
     //----------------------------------------------------------------------------------------------------
@@ -57,46 +269,242 @@ public class Fleet implements Serializable {
      */
     public Boat getBoatByName(String name) {
 
-        for (Boat boat : boats) {
-            if (boat.getName().equalsIgnoreCase(name)) {
-                return boat;
-            }
+        if (name == null) {
+            return null;
         }
 
-        return null;
+        lock.readLock().lock();
+        try {
+            return boats.get(nameKey(name));
+        } finally {
+            lock.readLock().unlock();
+        }
 
     } // end of the getBoatByName method
     //----------------------------------------------------------------------------------------------------
     /**
-     * Calculates the total amount spent on all boats in the fleet.
+     * Spends money on one of the fleet's boats and adds it to the running total, if the boat's budget
+     * allows it. Holding the read lock keeps the boat from being removed between the two steps, which
+     * would otherwise leave the expense in the total after the boat has gone. Called by the Boat.
+     * @param boat The boat to spend on
+     * @param amountCents The amount to spend, in cents
+     * @return True if the expense was made, false if it would exceed the purchase price
+     */
+    boolean spend(Boat boat, long amountCents) {
+
+        lock.readLock().lock();
+        try {
+            if (boat.getFleet() == this) {
+                if (!boat.reserveCents(amountCents)) {
+                    return false;
+                }
+                totalSpentCents.add(amountCents);
+                if (index != null) {
+                    index.budgetChanged(boat);
+                }
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // The boat was removed while waiting for the lock
+        return boat.trySpendCents(amountCents);
+
+    } // end of the spend method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats of one type.
+     * @param type The type of boat (SAILING or POWER)
+     * @return A read-only list of the boats of that type, in the order they were added
+     */
+    public List<Boat> getBoatsByType(Boat.BoatType type) {
+
+        buildIndex();
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(index.ofType(type));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    } // end of the getBoatsByType method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats manufactured in a range of years.
+     * @param fromYear The first year, inclusive
+     * @param toYear The last year, inclusive
+     * @return A read-only list of the boats in the range, sorted by year and then by name
+     */
+    public List<Boat> getBoatsByYear(int fromYear, int toYear) {
+
+        buildIndex();
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(index.yearBetween(fromYear, toYear));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    } // end of the getBoatsByYear method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats within a range of lengths.
+     * @param minFeet The shortest length in feet, inclusive
+     * @param maxFeet The longest length in feet, inclusive
+     * @return A read-only list of the boats in the range, sorted by length and then by name
+     */
+    public List<Boat> getBoatsByLength(int minFeet, int maxFeet) {
+
+        buildIndex();
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(index.lengthBetween(minFeet, maxFeet));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    } // end of the getBoatsByLength method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats whose remaining budget (purchase price minus expenses) is within a range.
+     * @param minimum The smallest remaining budget, inclusive
+     * @param maximum The largest remaining budget, inclusive
+     * @return A read-only list of the boats in the range, sorted by remaining budget and then by name
+     * @throws IllegalArgumentException If a bound is not a number, infinite or out of range
+     */
+    public List<Boat> getBoatsByRemainingBudget(double minimum, double maximum) {
+
+        return getBoatsByRemainingBudgetCents(Boat.toCents(minimum), Boat.toCents(maximum));
+
+    } // end of the getBoatsByRemainingBudget method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats whose remaining budget in cents is within a range.
+     * @param minimumCents The smallest remaining budget in cents, inclusive
+     * @param maximumCents The largest remaining budget in cents, inclusive
+     * @return A read-only list of the boats in the range, sorted by remaining budget and then by name
+     */
+    public List<Boat> getBoatsByRemainingBudgetCents(long minimumCents, long maximumCents) {
+
+        buildIndex();
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(index.remainingBudgetBetween(minimumCents, maximumCents));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+    } // end of the getBoatsByRemainingBudgetCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Builds the secondary indexes the first time the fleet is queried.
+     */
+    private void buildIndex() {
+
+        if (index != null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (index == null) {
+                index = new FleetIndex(boats.values());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    } // end of the buildIndex method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total amount spent on all boats in the fleet.
      * @return The total expenses for all boats
      */
     public double totalSpent() {
 
-        return boats.stream().mapToDouble(Boat::getExpenses).sum();
+        return totalSpentCents.sum() / 100.0;
 
     } // end of the totalSpent method
     //----------------------------------------------------------------------------------------------------
     /**
-     * Calculates the total purchase cost of all boats in the fleet.
+     * Returns the total amount spent on all boats in the fleet in cents.
+     * @return The total expenses for all boats, in cents
+     */
+    public long totalSpentCents() {
+
+        return totalSpentCents.sum();
+
+    } // end of the totalSpentCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total purchase cost of all boats in the fleet.
      * @return The total purchase cost for all boats
      */
     public double totalPurchaseCost() {
 
-        return boats.stream().mapToDouble(Boat::getPurchasePrice).sum();
+        return totalPurchaseCostCents / 100.0;
 
     } // end of the totalPurchaseCost method
     //----------------------------------------------------------------------------------------------------
     /**
-     * Gets the list of all boats in the fleet.
-     * @return The list of boats
+     * Returns the total purchase cost of all boats in the fleet in cents.
+     * @return The total purchase cost for all boats, in cents
+     */
+    public long totalPurchaseCostCents() {
+
+        return totalPurchaseCostCents;
+
+    } // end of the totalPurchaseCostCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Gets all boats in the fleet, in the order they were added.
+     * @return A copy of the list of boats, taken when the method is called; changing it does not
+     *         change the fleet
      */
     public ArrayList<Boat> getBoats() {
 
-        return boats;
+        return new ArrayList<>(Arrays.asList(boatArray()));
 
     } // end of the getBoats method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Takes a snapshot of the fleet for reports and analytics. The snapshot holds the boats and their
+     * expenses as they are now, and does not change when the fleet does. Expenses can still be posted
+     * while the snapshot is taken, and the array of boats is shared between snapshots until a boat is
+     * added or removed.
+     * @return A snapshot of the fleet
+     */
+    public FleetSnapshot snapshot() {
+
+        return new FleetSnapshot(boatArray());
+
+    } // end of the snapshot method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the boats as an array, building it if boats were added or removed since it was last built.
+     * @return The boats, in the order they were added, in an array that must not be changed
+     */
+    private Boat[] boatArray() {
+
+        Boat[] current = boatArray;
+        if (current != null) {
+            return current;
+        }
+
+        lock.readLock().lock();
+        try {
+            // Readers racing here build equal arrays, so it does not matter whose is kept
+            current = boats.values().toArray(new Boat[0]);
+            boatArray = current;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return current;
+
+    } // end of the boatArray method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Returns a string representation of the fleet, including details of each boat
      * and the total purchase cost and expenses for the fleet.
@@ -105,19 +513,58 @@ public class Fleet implements Serializable {
     @Override
     public String toString() {
 
-        StringBuilder sb = new StringBuilder("Fleet report:\n");
+        FleetSnapshot snapshot = snapshot();
+        StringBuilder sb = new StringBuilder(64 + 96 * snapshot.size());
 
-        for (Boat boat : boats) {
-            sb.append("    ").append(boat.toString()).append("\n");
+        try {
+            new FleetReportWriter(sb).writeReport(snapshot);
+        } catch (IOException e) {
+            // A StringBuilder is written to directly and never throws
+            throw new UncheckedIOException(e);
         }
 
-        sb.append(String.format("    Total                                              " +
-                        "   : Paid $%10.2f : Spent $%10.2f\n",
-                totalPurchaseCost(), totalSpent()));
-
         return sb.toString();
 
     } // end of the toString method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the fleet as the ArrayList of its boats, the same form used before the name index existed.
+     * @param out The stream the fleet is written to
+     * @throws IOException If the boats cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("boats", getBoats());
+        out.writeFields();
+
+    } // end of the writeObject method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the ArrayList of boats written by writeObject and rebuilds the name index and totals from it.
+     * Boats whose names differ only in case from another one are renamed, as by addSavedBoats.
+     * @param in The stream the fleet is read from
+     * @throws IOException If the boats cannot be read
+     * @throws ClassNotFoundException If the class of a serialized boat cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+        ArrayList<Boat> savedBoats = (ArrayList<Boat>) fields.get("boats", null);
+
+        boats = new LinkedHashMap<>();
+        totalSpentCents = new LongAdder();
+        totalPurchaseCostCents = 0;
+        lock = new ReentrantReadWriteLock();
+        index = null;
+        boatArray = null;
+        nameConflicts = new ArrayList<>();
+        if (savedBoats != null) {
+            addSavedBoats(savedBoats);
+        }
+
+    } // end of the readObject method
+    //----------------------------------------------------------------------------------------------------
 } // end of the Fleet class
 //========================================================================================================
@@ -0,0 +1,328 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+//========================================================================================================
+/**
+ * Answers the questions asked about a fleet's money: which boats have had the most spent on them,
+ * how spending breaks down by boat type and by year of manufacture, and how much is spent per foot
+ * of boat. Each question is answered in a single pass over a snapshot of the fleet, so the answers
+ * add up even while expenses are being posted, and the pass runs as a parallel stream once the fleet
+ * is large enough for that to pay off.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetAnalytics {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of boats from which the boats are processed as a parallel stream
+     */
+    private static final int PARALLEL_THRESHOLD = 100_000;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats with the most spent on them. Only the best boats seen so far are kept, in a heap
+     * of the requested size, so the whole fleet is never sorted.
+     * @param snapshot The snapshot of the fleet to search
+     * @param count The number of boats wanted
+     * @return Up to count boats, from most to least spent, with ties in name order
+     */
+    public static List<Boat> topBySpend(FleetSnapshot snapshot, int count) {
+
+        return topSnapshotBySpend(snapshot, count).getBoats();
+
+    } // end of the topBySpend method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats with the most spent on them, as a snapshot that keeps the expenses they were
+     * ranked by, so a report of them shows the same amounts even if the boats are spent on meanwhile.
+     * @param snapshot The snapshot of the fleet to search
+     * @param count The number of boats wanted
+     * @return A snapshot of up to count boats, from most to least spent, with ties in name order
+     */
+    public static FleetSnapshot topSnapshotBySpend(FleetSnapshot snapshot, int count) {
+
+        if (count < 1) {
+            return snapshot.subset(new int[0], 0);
+        }
+
+        PriorityQueue<Ranked> heap = indexes(snapshot).collect(PriorityQueue::new,
+                (top, i) -> offer(top, i, snapshot.getBoat(i), snapshot.getExpensesCents(i), count),
+                (first, second) -> {
+                    for (Ranked ranked : second) {
+                        offer(first, ranked.position, ranked.boat, ranked.spentCents, count);
+                    }
+                });
+
+        List<Ranked> ranked = new ArrayList<>(heap);
+        ranked.sort(Collections.reverseOrder());
+        int[] positions = new int[ranked.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = ranked.get(i).position;
+        }
+
+        return snapshot.subset(positions, positions.length);
+
+    } // end of the topSnapshotBySpend method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Offers a boat to a heap of the best boats, keeping the heap at no more than the given size.
+     * @param top The heap, with the least spent boat at its head
+     * @param position The position of the boat in the snapshot
+     * @param boat The boat
+     * @param spentCents The amount spent on the boat, read once so it cannot change while it is ranked
+     * @param count The largest size of the heap
+     */
+    private static void offer(PriorityQueue<Ranked> top, int position, Boat boat, long spentCents,
+                              int count) {
+
+        if (top.size() < count) {
+            top.add(new Ranked(position, boat, spentCents));
+            return;
+        }
+
+        if (spentCents < top.peek().spentCents) {
+            return;
+        }
+        Ranked candidate = new Ranked(position, boat, spentCents);
+        if (candidate.compareTo(top.peek()) > 0) {
+            top.poll();
+            top.add(candidate);
+        }
+
+    } // end of the offer method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Totals the fleet by boat type.
+     * @param snapshot The snapshot of the fleet to total
+     * @return The totals of each type that has boats, in type order
+     */
+    public static Map<Boat.BoatType, Summary> byType(FleetSnapshot snapshot) {
+
+        return group(snapshot, i -> snapshot.getBoat(i).getType(), () -> new EnumMap<>(Boat.BoatType.class));
+
+    } // end of the byType method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Totals the fleet by year of manufacture.
+     * @param snapshot The snapshot of the fleet to total
+     * @return The totals of each year that has boats, from the oldest year
+     */
+    public static Map<Integer, Summary> byYear(FleetSnapshot snapshot) {
+
+        return group(snapshot, i -> snapshot.getBoat(i).getYearOfManufacture(), TreeMap::new);
+
+    } // end of the byYear method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Totals the whole fleet.
+     * @param snapshot The snapshot of the fleet to total
+     * @return The totals of all boats
+     */
+    public static Summary overall(FleetSnapshot snapshot) {
+
+        return indexes(snapshot).collect(Summary::new,
+                (summary, i) -> summary.add(snapshot.getBoat(i), snapshot.getExpensesCents(i)),
+                Summary::merge);
+
+    } // end of the overall method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Totals the boats of a snapshot in groups.
+     * @param snapshot The snapshot of the fleet to total
+     * @param key Gives the group of the boat at a position in the snapshot
+     * @param groups Creates the map the groups are collected in
+     * @param <K> The type of the group keys
+     * @return The totals of each group
+     */
+    private static <K> Map<K, Summary> group(FleetSnapshot snapshot, IntFunction<K> key,
+                                             Supplier<Map<K, Summary>> groups) {
+
+        return indexes(snapshot).collect(groups,
+                (totals, i) -> totals.computeIfAbsent(key.apply(i), k -> new Summary())
+                        .add(snapshot.getBoat(i), snapshot.getExpensesCents(i)),
+                (first, second) -> second.forEach((k, summary) -> first.merge(k, summary, Summary::merge)));
+
+    } // end of the group method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a stream of the positions of the boats in a snapshot, parallel when there are enough
+     * boats.
+     * @param snapshot The snapshot
+     * @return A stream of the positions
+     */
+    private static IntStream indexes(FleetSnapshot snapshot) {
+
+        IntStream positions = IntStream.range(0, snapshot.size());
+
+        return snapshot.size() >= PARALLEL_THRESHOLD ? positions.parallel() : positions;
+
+    } // end of the indexes method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The totals of a group of boats.
+     */
+    public static final class Summary {
+
+        /**
+         * The number of boats
+         */
+        private long count;
+
+        /**
+         * The total purchase price of the boats, in cents
+         */
+        private long purchaseCostCents;
+
+        /**
+         * The total expenses of the boats, in cents
+         */
+        private long spentCents;
+
+        /**
+         * The total length of the boats, in feet
+         */
+        private long lengthInFeet;
+
+        /**
+         * Adds a boat to the totals.
+         * @param boat The boat
+         * @param expenses The expenses of the boat in the snapshot, in cents
+         */
+        private void add(Boat boat, long expenses) {
+
+            count++;
+            purchaseCostCents += boat.getPurchasePriceCents();
+            spentCents += expenses;
+            lengthInFeet += boat.getLengthInFeet();
+
+        } // end of the add method
+
+        /**
+         * Adds another group's totals to these.
+         * @param other The other group's totals
+         * @return These totals
+         */
+        private Summary merge(Summary other) {
+
+            count += other.count;
+            purchaseCostCents += other.purchaseCostCents;
+            spentCents += other.spentCents;
+            lengthInFeet += other.lengthInFeet;
+
+            return this;
+
+        } // end of the merge method
+
+        /**
+         * Returns the number of boats.
+         * @return The number of boats in the group
+         */
+        public long getCount() {
+
+            return count;
+
+        } // end of the getCount method
+
+        /**
+         * Returns the total purchase price of the boats in cents.
+         * @return The total purchase price, in cents
+         */
+        public long getPurchaseCostCents() {
+
+            return purchaseCostCents;
+
+        } // end of the getPurchaseCostCents method
+
+        /**
+         * Returns the total expenses of the boats in cents.
+         * @return The total expenses, in cents
+         */
+        public long getSpentCents() {
+
+            return spentCents;
+
+        } // end of the getSpentCents method
+
+        /**
+         * Returns the total length of the boats.
+         * @return The total length, in feet
+         */
+        public long getLengthInFeet() {
+
+            return lengthInFeet;
+
+        } // end of the getLengthInFeet method
+
+        /**
+         * Returns the amount spent per foot of boat: the total expenses over the total length.
+         * @return The expenses per foot, or 0 if the boats have no length
+         */
+        public double getSpendPerFoot() {
+
+            return lengthInFeet == 0 ? 0 : spentCents / 100.0 / lengthInFeet;
+
+        } // end of the getSpendPerFoot method
+
+    } // end of the Summary class
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * A boat together with the amount spent on it when it was ranked.
+     */
+    private static final class Ranked implements Comparable<Ranked> {
+
+        /**
+         * The position of the boat in the snapshot
+         */
+        private final int position;
+
+        /**
+         * The boat
+         */
+        private final Boat boat;
+
+        /**
+         * The amount spent on the boat, in cents
+         */
+        private final long spentCents;
+
+        /**
+         * Constructor that ranks a boat.
+         * @param snapshotPosition The position of the boat in the snapshot
+         * @param rankedBoat The boat
+         * @param spent The amount spent on the boat, in cents
+         */
+        Ranked(int snapshotPosition, Boat rankedBoat, long spent) {
+
+            position = snapshotPosition;
+            boat = rankedBoat;
+            spentCents = spent;
+
+        } // end of the constructor
+
+        /**
+         * Orders boats from least to most spent; of two boats with the same spend, the one whose name
+         * sorts later ranks lower.
+         * @param other The ranked boat to compare with
+         * @return A negative number, zero or a positive number as this boat ranks below, with or above
+         */
+        @Override
+        public int compareTo(Ranked other) {
+
+            if (spentCents != other.spentCents) {
+                return Long.compare(spentCents, other.spentCents);
+            }
+
+            return String.valueOf(other.boat.getName()).compareToIgnoreCase(String.valueOf(boat.getName()));
+
+        } // end of the compareTo method
+
+    } // end of the Ranked class
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetAnalytics class
+//========================================================================================================
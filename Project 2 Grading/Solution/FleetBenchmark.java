@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+//========================================================================================================
+/**
+ * Measures the cost of the main Fleet operations across a range of fleet sizes, so that performance
+ * work on Fleet and Boat can be checked for regressions. Each operation is warmed up and then timed
+ * over several rounds, and the median time per operation is reported. A second benchmark measures
+ * how expense posting scales with the number of threads.
+ * <p>
+ * Run with the fleet sizes to test as arguments, for example:
+ * <pre>
+ *     java -Xmx8g FleetBenchmark 10 1000 100000 1000000 10000000
+ * </pre>
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetBenchmark {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The fleet sizes tested when none are given on the command line
+     */
+    private static final int[] DEFAULT_SIZES = {10, 1_000, 100_000, 1_000_000};
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of untimed rounds run before measuring, to let the JIT compiler settle
+     */
+    private static final int WARMUP_ROUNDS = 3;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of timed rounds; the median is reported
+     */
+    private static final int MEASURED_ROUNDS = 5;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The shortest time a round runs for, in nanoseconds, so that fast operations are repeated enough
+     */
+    private static final long MIN_ROUND_NANOS = 200_000_000L;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The first words of generated boat names
+     */
+    private static final String[] NAME_FIRST_WORDS = {
+            "Sea", "Wind", "Blue", "Salty", "Lucky", "Morning", "Silver", "Island", "Ocean", "Wild",
+            "Southern", "Golden", "Lazy", "Reel", "Knot", "Summer", "Coral", "Storm", "Tide", "Free"
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The second words of generated boat names
+     */
+    private static final String[] NAME_SECOND_WORDS = {
+            "Breeze", "Dancer", "Spirit", "Dog", "Star", "Glory", "Runner", "Time", "Chaser", "Wave",
+            "Cross", "Eagle", "Days", "Therapy", "Escape", "Queen", "Reef", "Rider", "Song", "Bird"
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Make/model values, roughly from most to least common
+     */
+    private static final String[] MAKE_MODELS = {
+            "Catalina", "Beneteau", "Boston Whaler", "Sea Ray", "Hunter", "Jeanneau", "Bayliner", "Mako",
+            "Grady-White", "Hinckley", "Bristol", "Pearson", "Tartan", "J/Boats", "Hallberg-Rassy",
+            "Sabre", "Island Packet", "Regal", "Chris-Craft", "Viking"
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Written with benchmark results so the JIT compiler cannot remove the work being measured
+     */
+    private static volatile long sink;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The main method that runs the benchmarks for each fleet size.
+     * @param args The fleet sizes to test; the default sizes are used if there are none
+     * @throws InterruptedException If the concurrent benchmark is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-22s %10s %14s%n", "Operation", "Boats", "ns/op");
+        for (int size : sizes) {
+            benchmarkFleet(size);
+        }
+
+        System.out.println();
+        benchmarkConcurrentExpenses(100_000);
+
+    } // end of the main method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs every single-threaded benchmark on fleets of one size.
+     * @param size The number of boats in the fleet
+     */
+    private static void benchmarkFleet(int size) {
+
+        Boat[] boats = generateBoats(size, 42);
+        String[] lookups = shuffledNames(boats, 7);
+        String[] misses = new String[Math.max(1, Math.min(size, 100_000))];
+        for (int i = 0; i < misses.length; i++) {
+            misses[i] = "No Such Boat " + i;
+        }
+
+        report("addBoat", size, measure(() -> {
+            Fleet fleet = new Fleet();
+            for (Boat boat : boats) {
+                fleet.addBoat(boat);
+            }
+            sink = fleet.totalPurchaseCostCents();
+            return size;
+        }));
+
+        Fleet fleet = new Fleet();
+        for (Boat boat : boats) {
+            fleet.addBoat(boat);
+        }
+
+        report("getBoatByName (hit)", size, measure(() -> {
+            long found = 0;
+            for (String name : lookups) {
+                if (fleet.getBoatByName(name) != null) {
+                    found++;
+                }
+            }
+            sink = found;
+            return lookups.length;
+        }));
+
+        report("getBoatByName (miss)", size, measure(() -> {
+            long found = 0;
+            for (String name : misses) {
+                if (fleet.getBoatByName(name) != null) {
+                    found++;
+                }
+            }
+            sink = found;
+            return misses.length;
+        }));
+
+        report("removeBoat + addBoat", size, measure(() -> {
+            int operations = Math.min(size, 100_000);
+            for (int i = 0; i < operations; i++) {
+                fleet.removeBoat(boats[i].getName());
+                fleet.addBoat(boats[i]);
+            }
+            return operations;
+        }));
+
+        report("totalSpent", size, measure(() -> {
+            double total = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                total += fleet.totalSpent() + fleet.totalPurchaseCost();
+            }
+            sink = (long) total;
+            return 1_000_000;
+        }));
+
+        report("toString", size, measure(() -> {
+            sink = fleet.toString().length();
+            return 1;
+        }));
+
+    } // end of the benchmarkFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Measures how many expenses per second are posted as the number of threads grows, with every
+     * thread spending on random boats of the same fleet.
+     * @param size The number of boats in the fleet
+     * @throws InterruptedException If the benchmark is interrupted
+     */
+    private static void benchmarkConcurrentExpenses(int size) throws InterruptedException {
+
+        Fleet fleet = new Fleet();
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = "Boat " + i;
+            fleet.addBoat(new Boat(Boat.BoatType.POWER, names[i], 2000, "Catalina", 30, 1e12));
+        }
+
+        System.out.printf("%-22s %10s %14s%n", "Concurrent expenses", "Threads", "expenses/s");
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads = threads < processors
+                ? Math.min(threads * 2, processors) : threads + 1) {
+            int perThread = 2_000_000;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                CountDownLatch done = new CountDownLatch(threads);
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    new Thread(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < perThread; i++) {
+                            fleet.getBoatByName(names[random.nextInt(names.length)]).trySpendCents(1);
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                long elapsed = System.nanoTime() - start;
+                if (round == WARMUP_ROUNDS) {
+                    System.out.printf("%-22s %10d %14.0f%n", "trySpendCents", threads,
+                            threads * (double) perThread * 1e9 / elapsed);
+                }
+            }
+        }
+
+    } // end of the benchmarkConcurrentExpenses method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Generates boats with realistic names and a skewed make/model distribution. Names combine two
+     * common boat-name words and a number, so they are unique but share long prefixes like real fleets.
+     * @param count The number of boats to generate
+     * @param seed The seed of the random generator, so the same boats are generated every time
+     * @return The generated boats
+     */
+    static Boat[] generateBoats(int count, long seed) {
+
+        Random random = new Random(seed);
+        Boat[] boats = new Boat[count];
+
+        for (int i = 0; i < count; i++) {
+            String name = NAME_FIRST_WORDS[random.nextInt(NAME_FIRST_WORDS.length)] + " "
+                    + NAME_SECOND_WORDS[random.nextInt(NAME_SECOND_WORDS.length)] + " " + i;
+            // Squaring a uniform value favours the first, most common, make/model values
+            double skew = random.nextDouble();
+            String makeModel = MAKE_MODELS[(int) (skew * skew * MAKE_MODELS.length)];
+            Boat.BoatType type = random.nextBoolean() ? Boat.BoatType.SAILING : Boat.BoatType.POWER;
+            long priceCents = 500_000 + (long) (random.nextDouble() * 100_000_000);
+            boats[i] = Boat.withCents(type, name, 1960 + random.nextInt(65), makeModel,
+                    12 + random.nextInt(60), priceCents, random.nextInt((int) Math.min(priceCents, 1_000_000)));
+        }
+
+        return boats;
+
+    } // end of the generateBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the names of the boats in random order, with random letters upper-cased so lookups
+     * exercise the case-insensitive matching.
+     * @param boats The boats whose names are used
+     * @param seed The seed of the random generator
+     * @return The shuffled names
+     */
+    private static String[] shuffledNames(Boat[] boats, long seed) {
+
+        Random random = new Random(seed);
+        String[] names = new String[boats.length];
+
+        for (int i = 0; i < boats.length; i++) {
+            names[i] = random.nextInt(4) == 0 ? boats[i].getName().toUpperCase(Locale.ROOT) : boats[i].getName();
+        }
+        for (int i = names.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String swap = names[i];
+            names[i] = names[j];
+            names[j] = swap;
+        }
+
+        return names;
+
+    } // end of the shuffledNames method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs an operation for the warm-up rounds and then the measured rounds, repeating it within each
+     * round until the round has lasted long enough.
+     * @param operation The operation to measure
+     * @return The median time per operation over the measured rounds, in nanoseconds
+     */
+    static double measure(Operation operation) {
+
+        List<Double> results = new ArrayList<>();
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long operations = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                operations += operation.run();
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MIN_ROUND_NANOS);
+            if (round >= WARMUP_ROUNDS) {
+                results.add((double) elapsed / operations);
+            }
+        }
+        results.sort(null);
+
+        return results.get(results.size() / 2);
+
+    } // end of the measure method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Prints one line of results.
+     * @param operation The name of the operation
+     * @param size The number of boats in the fleet
+     * @param nanosPerOperation The median time per operation, in nanoseconds
+     */
+    static void report(String operation, int size, double nanosPerOperation) {
+
+        System.out.printf("%-22s %10d %14.1f%n", operation, size, nanosPerOperation);
+
+    } // end of the report method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * A piece of work to be timed.
+     */
+    interface Operation {
+
+        /**
+         * Runs the work once.
+         * @return The number of operations performed
+         */
+        long run();
+
+    } // end of the Operation interface
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetBenchmark class
+//========================================================================================================
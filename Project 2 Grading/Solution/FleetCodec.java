@@ -0,0 +1,662 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+//========================================================================================================
+/**
+ * Reads and writes fleets in a compact binary format, used for the fleet database instead of Java
+ * serialization. The format starts with a header holding a magic number, the format version, the
+ * number of boats and (from version 2) the generation of the expense journal that continues from this
+ * snapshot, followed by one record per boat:
+ * <pre>
+ *     int    record length in bytes, not counting this field
+ *     byte   boat type (the BoatType ordinal)
+ *     short  name length, then the name in UTF-8
+ *     int    year of manufacture
+ *     short  make/model length, then the make/model in UTF-8
+ *     int    length in feet
+ *     long   purchase price in cents
+ *     long   expenses in cents
+ * </pre>
+ * Before version 4 the purchase price and expenses were doubles holding dollars, which cannot hold
+ * every whole number of cents up to Boat.MAX_CENTS; such databases are still read.
+ * <p>
+ * From version 3 the records are followed by a footer:
+ * <pre>
+ *     int    footer magic number ("FEND")
+ *     int    CRC-32 of everything before the footer
+ * </pre>
+ * A database cut short or damaged on disk fails the footer test and is rejected as a whole, and no
+ * boat from it is added to the fleet. Older versions have no footer and are read without the test.
+ * <p>
+ * All values are big-endian. Because every record carries its length, a later version can append
+ * fields to a record and older fields are still found in the same place. Databases written with
+ * Java serialization by earlier versions of the program are still read, so they are migrated the
+ * next time the fleet is saved. Large databases are memory-mapped and decoded from the mapping rather
+ * than copied through a stream. Loading is not lazy either way: every record is decoded into a Boat on
+ * the heap before loading returns, so its time and memory grow with the size of the fleet. Make/model
+ * values are decoded through a StringTable, so the boats of a
+ * loaded fleet share one String for each distinct make/model.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetCodec {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The magic number at the start of every fleet database ("FLET")
+     */
+    private static final int MAGIC = 0x464C4554;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The version of the format written by this class
+     */
+    private static final short VERSION = 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The first version whose records hold money as whole cents in longs rather than dollars in doubles
+     */
+    static final short CENTS_VERSION = 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The magic number at the start of the footer ("FEND")
+     */
+    private static final int FOOTER_MAGIC = 0x46454E44;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the footer: footer magic number and checksum
+     */
+    private static final int FOOTER_LENGTH = 4 + 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The largest record accepted when reading, to catch corrupt length fields early
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Databases at least this many bytes long are memory-mapped when read, which saves copying them
+     * through a stream buffer but still decodes every boat. Smaller ones are streamed, since mapping
+     * gains little for them and the mapping stays open until it is garbage collected.
+     */
+    private static final long MAP_THRESHOLD = 64L << 20;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the version 1 header: magic number, version and boat count
+     */
+    private static final int HEADER_LENGTH_V1 = 4 + 2 + 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the version 2 header, which adds the journal generation
+     */
+    private static final int HEADER_LENGTH_V2 = HEADER_LENGTH_V1 + 8;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boat types, indexed by the code written for them
+     */
+    private static final Boat.BoatType[] BOAT_TYPES = Boat.BoatType.values();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes a fleet in the binary format.
+     * @param fleet The fleet to write
+     * @param output The stream to write to; it should be buffered
+     * @param journalGeneration The generation of the journal that records changes made after this snapshot
+     * @throws IOException If the fleet cannot be written
+     */
+    public static void writeFleet(Fleet fleet, OutputStream output, long journalGeneration)
+            throws IOException {
+
+        writeFleet(fleet.snapshot(), output, journalGeneration);
+
+    } // end of the writeFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes a snapshot of a fleet in the binary format.
+     * @param snapshot The snapshot of the fleet to write
+     * @param output The stream to write to; it should be buffered
+     * @param journalGeneration The generation of the journal that records changes made after this snapshot
+     * @throws IOException If the fleet cannot be written
+     */
+    public static void writeFleet(FleetSnapshot snapshot, OutputStream output, long journalGeneration)
+            throws IOException {
+
+        CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        ByteBuffer record = ByteBuffer.allocate(256);
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(snapshot.size());
+        out.writeLong(journalGeneration);
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            record = writeBoat(snapshot.getBoat(i), snapshot.getExpensesCents(i), record);
+            out.writeInt(record.remaining());
+            out.write(record.array(), 0, record.remaining());
+        }
+
+        int checksum = (int) checked.getChecksum().getValue();
+        out.writeInt(FOOTER_MAGIC);
+        out.writeInt(checksum);
+        out.flush();
+
+    } // end of the writeFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes a snapshot of a fleet in the binary format to a file and forces it to the disk before
+     * returning, so the file can be renamed into place or named in a manifest without risk of its
+     * contents still being only in the operating system's cache.
+     * @param snapshot The snapshot of the fleet to write
+     * @param file The file to write, replaced if it exists
+     * @param journalGeneration The generation of the journal that records changes made after this snapshot
+     * @throws IOException If the file cannot be written
+     */
+    static void writeFleet(FleetSnapshot snapshot, Path file, long journalGeneration) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            writeFleet(snapshot, out, journalGeneration);
+            channel.force(true);
+        }
+
+    } // end of the writeFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Encodes the fields of one boat record, without the leading record length.
+     * @param boat The boat to encode
+     * @param record A buffer to encode into, replaced by a larger one if it is too small
+     * @return The buffer holding the record, positioned at its start and limited to its end
+     * @throws IOException If a String of the boat is too long to encode
+     */
+    static ByteBuffer writeBoat(Boat boat, ByteBuffer record) throws IOException {
+
+        return writeBoat(boat, boat.getExpensesCents(), record);
+
+    } // end of the writeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Encodes the fields of one boat record with the expenses read for a snapshot, without the leading
+     * record length.
+     * @param boat The boat to encode
+     * @param expensesCents The expenses of the boat, in cents
+     * @param record A buffer to encode into, replaced by a larger one if it is too small
+     * @return The buffer holding the record, positioned at its start and limited to its end
+     * @throws IOException If a String of the boat is too long to encode
+     */
+    static ByteBuffer writeBoat(Boat boat, long expensesCents, ByteBuffer record) throws IOException {
+
+        byte[] name = encode(boat.getName());
+        byte[] makeModel = encode(boat.getMakeModel());
+        int length = 1 + 2 + name.length + 4 + 2 + makeModel.length + 4 + 8 + 8;
+
+        if (record.capacity() < length) {
+            record = ByteBuffer.allocate(Math.max(length, record.capacity() * 2));
+        }
+        record.clear();
+        record.put((byte) boat.getType().ordinal());
+        record.putShort((short) name.length).put(name);
+        record.putInt(boat.getYearOfManufacture());
+        record.putShort((short) makeModel.length).put(makeModel);
+        record.putInt(boat.getLengthInFeet());
+        record.putLong(boat.getPurchasePriceCents());
+        record.putLong(expensesCents);
+
+        return record.flip();
+
+    } // end of the writeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a fleet database file and adds its boats to the fleet. The boats are only added once the
+     * whole database has been read and its checksum, if it has one, has been checked.
+     * @param file The database file
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the database cannot be read or is not a fleet database
+     */
+    public static long readFleet(Path file, Fleet fleet) throws IOException {
+
+        List<Boat> boats = new ArrayList<>();
+        List<String> renamed = new ArrayList<>();
+        long journalGeneration = readBoats(file, boats, renamed);
+        fleet.addSavedBoats(boats);
+        for (String message : renamed) {
+            fleet.noteNameConflict(message);
+        }
+
+        return journalGeneration;
+
+    } // end of the readFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the boats of a fleet database file into a list. Large binary databases are memory-mapped
+     * and decoded straight from the mapping; anything else is read as a stream. Either way every boat
+     * is decoded before this returns. Safe to call for several files at once.
+     * @param file The database file
+     * @param boats The list the boats are added to, in the order they were saved
+     * @param renamed The list a message is added to for each boat of a serialized fleet that was renamed
+     *                because its name differs only in case from another's
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the database cannot be read or is not a fleet database
+     */
+    static long readBoats(Path file, List<Boat> boats, List<String> renamed) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD || size > Integer.MAX_VALUE) {
+                return readBoats(Channels.newInputStream(channel), boats, renamed);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getShort(0) == ObjectStreamConstants.STREAM_MAGIC) {
+                channel.position(0);
+                return readBoats(Channels.newInputStream(channel), boats, renamed);
+            }
+            return readMappedBoats(mapped, boats);
+        }
+
+    } // end of the readBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation stored in the header of a fleet database file, without reading its
+     * boats or checking its checksum.
+     * @param file The database file
+     * @return The journal generation, 0 if the database has none, or -1 if the file is missing or is
+     *         not a fleet database
+     */
+    static long readGeneration(Path file) {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            if ((magic >>> 16) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF)) {
+                return 0;
+            }
+            if (magic != MAGIC) {
+                return -1;
+            }
+            short version = in.readShort();
+            in.readInt();
+
+            return version >= 2 ? in.readLong() : 0;
+        } catch (IOException e) {
+            // Missing, unreadable or too short to hold a header
+            return -1;
+        }
+
+    } // end of the readGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Decodes every record of a binary fleet database held in a mapped buffer into a Boat, one at a
+     * time, after checking the checksum of the whole buffer.
+     * @param mapped The whole database
+     * @param boats The list the boats are added to
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the buffer does not hold a valid fleet database
+     */
+    private static long readMappedBoats(ByteBuffer mapped, List<Boat> boats) throws IOException {
+
+        if (mapped.limit() < HEADER_LENGTH_V1 || mapped.getInt(0) != MAGIC) {
+            throw new StreamCorruptedException("Not a fleet database");
+        }
+        short version = mapped.getShort(4);
+        if (version < 1 || version > VERSION) {
+            throw new StreamCorruptedException("Unsupported fleet database version " + version);
+        }
+        if (version >= 2 && mapped.limit() < HEADER_LENGTH_V2) {
+            throw new EOFException("Truncated fleet database");
+        }
+
+        int size = mapped.limit();
+        if (version >= 3) {
+            if (size < HEADER_LENGTH_V2 + FOOTER_LENGTH
+                    || mapped.getInt(size - FOOTER_LENGTH) != FOOTER_MAGIC) {
+                throw new EOFException("Truncated fleet database");
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(mapped.duplicate().position(0).limit(size - FOOTER_LENGTH));
+            if (mapped.getInt(size - 4) != (int) checksum.getValue()) {
+                throw new StreamCorruptedException("Fleet database checksum mismatch");
+            }
+            size -= FOOTER_LENGTH;
+        }
+
+        int boatCount = mapped.getInt(6);
+        long journalGeneration = version >= 2 ? mapped.getLong(HEADER_LENGTH_V1) : 0;
+        int position = version >= 2 ? HEADER_LENGTH_V2 : HEADER_LENGTH_V1;
+        byte[] scratch = new byte[0xFFFF];
+        StringTable makeModels = new StringTable();
+
+        for (int i = 0; i < boatCount; i++) {
+            if (position > size - 4) {
+                throw new EOFException("Truncated fleet database");
+            }
+            int length = mapped.getInt(position);
+            position += 4;
+            if (length < 0 || length > MAX_RECORD_LENGTH || length > size - position) {
+                throw new StreamCorruptedException("Invalid record length " + length);
+            }
+            mapped.limit(position + length).position(position);
+            boats.add(readBoat(mapped, scratch, makeModels, version >= CENTS_VERSION));
+            mapped.limit(mapped.capacity());
+            position += length;
+        }
+
+        return journalGeneration;
+
+    } // end of the readMappedBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a fleet database and adds its boats to the fleet. Both the binary format and the Java
+     * serialization format of earlier versions are accepted. The boats are only added once the whole
+     * database has been read and its checksum, if it has one, has been checked.
+     * @param input The stream to read from
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the database cannot be read or is not a fleet database
+     */
+    public static long readFleet(InputStream input, Fleet fleet) throws IOException {
+
+        List<Boat> boats = new ArrayList<>();
+        List<String> renamed = new ArrayList<>();
+        long journalGeneration = readBoats(input, boats, renamed);
+        fleet.addSavedBoats(boats);
+        for (String message : renamed) {
+            fleet.noteNameConflict(message);
+        }
+
+        return journalGeneration;
+
+    } // end of the readFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the boats of a fleet database from a stream into a list.
+     * @param input The stream to read from
+     * @param boats The list the boats are added to, in the order they were saved
+     * @param renamed The list a message is added to for each boat of a serialized fleet that was renamed
+     * @return The journal generation stored in the database, or 0 if it has none
+     * @throws IOException If the database cannot be read or is not a fleet database
+     */
+    private static long readBoats(InputStream input, List<Boat> boats, List<String> renamed)
+            throws IOException {
+
+        BufferedInputStream buffered = new BufferedInputStream(input, 1 << 16);
+        DataInputStream in = new DataInputStream(buffered);
+
+        buffered.mark(2);
+        if (in.readShort() == ObjectStreamConstants.STREAM_MAGIC) {
+            buffered.reset();
+            readSerializedFleet(buffered, boats, renamed);
+            return 0;
+        }
+        buffered.reset();
+
+        BlockInput blocks = new BlockInput(buffered);
+        ByteBuffer header = blocks.require(HEADER_LENGTH_V1);
+        if (header.getInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a fleet database");
+        }
+        short version = header.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new StreamCorruptedException("Unsupported fleet database version " + version);
+        }
+
+        int boatCount = header.getInt();
+        long journalGeneration = version >= 2 ? blocks.require(8).getLong() : 0;
+        byte[] scratch = new byte[0xFFFF];
+        StringTable makeModels = new StringTable();
+
+        // Records are decoded in place in the block they were read into
+        for (int i = 0; i < boatCount; i++) {
+            int length = blocks.require(4).getInt();
+            if (length < 0 || length > MAX_RECORD_LENGTH) {
+                throw new StreamCorruptedException("Invalid record length " + length);
+            }
+            ByteBuffer block = blocks.require(length);
+            int end = block.position() + length;
+            int limit = block.limit();
+            block.limit(end);
+            boats.add(readBoat(block, scratch, makeModels, version >= CENTS_VERSION));
+            block.limit(limit).position(end);
+        }
+
+        if (version >= 3) {
+            int expected = blocks.getChecksum();
+            ByteBuffer footer = blocks.require(FOOTER_LENGTH);
+            if (footer.getInt() != FOOTER_MAGIC || footer.getInt() != expected) {
+                throw new StreamCorruptedException("Fleet database checksum mismatch");
+            }
+        }
+
+        return journalGeneration;
+
+    } // end of the readBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Decodes one boat record. Any bytes after the known fields belong to a later version and are
+     * ignored.
+     * @param record The record, positioned at its first field and limited to its end
+     * @param scratch A buffer large enough for any String in the record
+     * @param makeModels The table that shares the make/model Strings of the boats being read
+     * @param inCents True if the money fields are whole cents in longs, false if they are dollars in
+     *                doubles, as written before version 4
+     * @return The decoded boat
+     * @throws IOException If the record is malformed
+     */
+    static Boat readBoat(ByteBuffer record, byte[] scratch, StringTable makeModels, boolean inCents)
+            throws IOException {
+
+        try {
+            int typeCode = record.get();
+            if (typeCode < 0 || typeCode >= BOAT_TYPES.length) {
+                throw new StreamCorruptedException("Unknown boat type code " + typeCode);
+            }
+            String name = decode(record, scratch);
+            int year = record.getInt();
+            String makeModel = decode(record, scratch, makeModels);
+            int length = record.getInt();
+            if (!inCents) {
+                double price = record.getDouble();
+                double expenses = record.getDouble();
+                return new Boat(BOAT_TYPES[typeCode], name, year, makeModel, length, price, expenses);
+            }
+            long priceCents = record.getLong();
+            long expensesCents = record.getLong();
+            if (priceCents < -Boat.MAX_CENTS || priceCents > Boat.MAX_CENTS
+                    || expensesCents < -Boat.MAX_CENTS || expensesCents > Boat.MAX_CENTS) {
+                throw new StreamCorruptedException("Boat " + name + " has an amount out of range");
+            }
+
+            return Boat.withCents(BOAT_TYPES[typeCode], name, year, makeModel, length, priceCents,
+                    expensesCents);
+        } catch (RuntimeException e) {
+            throw new EOFException("Truncated boat record");
+        }
+
+    } // end of the readBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a fleet written with Java serialization by an earlier version of the program. Names were
+     * told apart by case then, so a boat whose name differs only in case from an earlier one comes back
+     * renamed, and a message says so.
+     * @param input The stream positioned at the start of the serialized fleet
+     * @param boats The list the boats are added to
+     * @param renamed The list a message is added to for each renamed boat
+     * @throws IOException If the fleet cannot be read
+     */
+    private static void readSerializedFleet(InputStream input, List<Boat> boats, List<String> renamed)
+            throws IOException {
+
+        ObjectInputStream objectInput = new ObjectInputStream(input);
+
+        try {
+            Fleet loadedFleet = (Fleet) objectInput.readObject();
+            boats.addAll(loadedFleet.getBoats());
+            renamed.addAll(loadedFleet.getNameConflicts());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new StreamCorruptedException("Serialized database does not hold a fleet");
+        }
+
+    } // end of the readSerializedFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Encodes a String as UTF-8, checking that its length fits in the record's length field.
+     * @param value The String to encode
+     * @return The UTF-8 bytes
+     * @throws UTFDataFormatException If the encoded String is longer than 65535 bytes
+     */
+    static byte[] encode(String value) throws UTFDataFormatException {
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new UTFDataFormatException("String too long to save: " + bytes.length + " bytes");
+        }
+
+        return bytes;
+
+    } // end of the encode method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Decodes a length-prefixed UTF-8 String from a record.
+     * @param record The record, positioned at the length of the String
+     * @param scratch A buffer large enough for the String's bytes
+     * @return The decoded String
+     */
+    static String decode(ByteBuffer record, byte[] scratch) {
+
+        int length = record.getShort() & 0xFFFF;
+        record.get(scratch, 0, length);
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+
+    } // end of the decode method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Decodes a length-prefixed UTF-8 String from a record through a table, so a value seen before
+     * is returned as the String already made for it.
+     * @param record The record, positioned at the length of the String
+     * @param scratch A buffer large enough for the String's bytes
+     * @param table The table of Strings decoded so far
+     * @return The shared String
+     */
+    static String decode(ByteBuffer record, byte[] scratch, StringTable table) {
+
+        int length = record.getShort() & 0xFFFF;
+        record.get(scratch, 0, length);
+
+        return table.get(scratch, 0, length);
+
+    } // end of the decode method with a table
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a stream a large block at a time and hands out the bytes read so far as a buffer, so the
+     * records of a database are decoded straight from the block rather than read a few bytes at a
+     * time, and the checksum is taken over whole blocks.
+     */
+    private static final class BlockInput {
+
+        /**
+         * The size of the blocks read from the stream
+         */
+        private static final int BLOCK_SIZE = 1 << 16;
+
+        /**
+         * The stream being read
+         */
+        private final InputStream input;
+
+        /**
+         * The checksum of the bytes handed out so far, up to the start of the unchecked bytes
+         */
+        private final CRC32 checksum;
+
+        /**
+         * The bytes read from the stream; those not handed out yet lie between its position and limit
+         */
+        private ByteBuffer block;
+
+        /**
+         * The offset in the block of the first byte handed out but not yet added to the checksum
+         */
+        private int unchecked;
+
+        /**
+         * Constructor that creates a reader for a stream.
+         * @param stream The stream to read
+         */
+        BlockInput(InputStream stream) {
+
+            input = stream;
+            checksum = new CRC32();
+            block = ByteBuffer.allocate(BLOCK_SIZE).flip();
+            unchecked = 0;
+
+        } // end of the constructor
+
+        /**
+         * Returns the block, positioned at the next byte and holding at least the given number of bytes
+         * after it, reading more of the stream first if needed. The caller moves the position past the
+         * bytes it takes.
+         * @param count The number of bytes needed
+         * @return The block
+         * @throws IOException If the stream cannot be read or ends first
+         */
+        ByteBuffer require(int count) throws IOException {
+
+            if (block.remaining() >= count) {
+                return block;
+            }
+
+            checksum.update(block.array(), unchecked, block.position() - unchecked);
+            unchecked = 0;
+            block.compact();
+            if (block.capacity() < count) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(count, block.capacity() * 2));
+                block = larger.put(block.flip());
+            }
+            while (block.position() < count) {
+                int read = input.read(block.array(), block.position(), block.remaining());
+                if (read < 0) {
+                    throw new EOFException("Truncated fleet database");
+                }
+                block.position(block.position() + read);
+            }
+
+            return block.flip();
+
+        } // end of the require method
+
+        /**
+         * Returns the checksum of every byte handed out so far.
+         * @return The CRC-32 of the bytes
+         */
+        int getChecksum() {
+
+            checksum.update(block.array(), unchecked, block.position() - unchecked);
+            unchecked = block.position();
+
+            return (int) checksum.getValue();
+
+        } // end of the getChecksum method
+
+    } // end of the BlockInput class
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetCodec class
+//========================================================================================================
@@ -0,0 +1,792 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+//========================================================================================================
+/**
+ * Loads boats from a CSV file into a fleet. The file is read in large blocks and each line is parsed
+ * straight from the byte buffer, without splitting it into temporary Strings, so very large manifests
+ * load quickly. Boat types are matched without allocating, repeated make/model values share a single
+ * String, and malformed lines are reported with their line number instead of stopping the load.
+ * Lines starting with '#' are comments. An optional seventh field holds the amount already spent on
+ * the boat, so a fleet saved as CSV keeps its expenses. It is only read as expenses when it starts
+ * like a number, so manifests that use a seventh column for something else still load.
+ * Large files are split at line boundaries into chunks that are parsed in parallel and then added to
+ * the fleet in their original order.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetCsvLoader {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The initial size of the read buffer, grown if a single line does not fit
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The largest number of error messages kept; further errors are only counted
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of fields a boat line must have
+     */
+    private static final int FIELD_COUNT = 6;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of fields a boat line may have; the optional last one holds the expenses
+     */
+    private static final int MAX_FIELD_COUNT = FIELD_COUNT + 1;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Files at least this many bytes long are parsed in parallel chunks
+     */
+    private static final long PARALLEL_THRESHOLD = 64L << 20;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of chunks given to each processor, so that uneven chunks still keep every core busy
+     */
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The most digits a plain decimal amount may have to be converted to cents exactly. Such a value
+     * always fits in a long, and every amount up to Boat.MAX_CENTS, written with up to three decimal
+     * places, has no more.
+     */
+    private static final int MAX_EXACT_DIGITS = 17;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Powers of ten, used to scale prices to cents
+     */
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boat types, looked up once rather than on every line
+     */
+    private static final Boat.BoatType[] BOAT_TYPES = Boat.BoatType.values();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The make/model values seen so far, so each distinct value is only created once
+     */
+    private final StringTable makeModels;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The error messages of the malformed lines, up to MAX_REPORTED_ERRORS of them
+     */
+    private final List<String> errors;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The total number of malformed lines
+     */
+    private int errorCount;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The start position of each field of the line being parsed
+     */
+    private final int[] fieldStarts;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The position just past the end of each field of the line being parsed
+     */
+    private final int[] fieldEnds;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The fleet parsed boats are added to, or null while parsing a chunk
+     */
+    private Fleet fleet;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of lines read so far
+     */
+    private long lineNumber;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of boats added to the fleet so far
+     */
+    private int added;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * When parsing a chunk, the boat of each non-blank line in order, or null for a malformed line
+     */
+    private final ArrayList<Boat> chunkBoats;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * When parsing a chunk, the line number within the chunk of each entry of chunkBoats
+     */
+    private int[] chunkLines;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * When parsing a chunk, the error message of each malformed line, in order
+     */
+    private final ArrayList<String> chunkProblems;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a loader with no errors recorded.
+     */
+    public FleetCsvLoader() {
+
+        this(new StringTable());
+
+    } // end of the default constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a loader using the given table of make/model values.
+     * @param makeModelTable The table used to share make/model Strings
+     */
+    private FleetCsvLoader(StringTable makeModelTable) {
+
+        makeModels = makeModelTable;
+        errors = new ArrayList<>();
+        errorCount = 0;
+        fieldStarts = new int[MAX_FIELD_COUNT];
+        fieldEnds = new int[MAX_FIELD_COUNT];
+        chunkBoats = new ArrayList<>();
+        chunkLines = new int[16];
+        chunkProblems = new ArrayList<>();
+
+    } // end of the constructor with a make/model table
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads every well-formed line of a CSV file into the fleet. Malformed lines and boats whose name
+     * is already in the fleet are skipped and recorded as errors. Large files are parsed in parallel
+     * when more than one processor is available.
+     * @param fileName The location of the CSV file
+     * @param fleet The fleet to add the boats to
+     * @return The number of boats added to the fleet
+     * @throws IOException If the file cannot be read
+     */
+    public int load(String fileName, Fleet fleet) throws IOException {
+
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (processors > 1 && channel.size() >= PARALLEL_THRESHOLD) {
+                return loadInChunks(channel, fleet, processors * CHUNKS_PER_PROCESSOR);
+            }
+        }
+
+        try (InputStream input = new FileInputStream(fileName)) {
+            return load(input, fleet);
+        }
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads every well-formed line of a CSV stream into the fleet. Malformed lines and boats whose
+     * name is already in the fleet are skipped and recorded as errors.
+     * @param input The stream to read the CSV data from
+     * @param fleet The fleet to add the boats to
+     * @return The number of boats added to the fleet
+     * @throws IOException If the stream cannot be read
+     */
+    public int load(InputStream input, Fleet fleet) throws IOException {
+
+        this.fleet = fleet;
+        added = 0;
+        readLines(input);
+
+        return added;
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads a CSV file by splitting it at line boundaries into chunks, parsing the chunks on the common
+     * fork-join pool, and adding each chunk's boats to the fleet in file order as soon as it is ready.
+     * Line numbers in error messages are the same as a sequential load would report.
+     * @param channel The open CSV file
+     * @param fleet The fleet to add the boats to
+     * @param chunkCount The number of chunks to split the file into
+     * @return The number of boats added to the fleet
+     * @throws IOException If the file cannot be read
+     */
+    int loadInChunks(FileChannel channel, Fleet fleet, int chunkCount) throws IOException {
+
+        long size = channel.size();
+        long[] boundaries = new long[chunkCount + 1];
+
+        boundaries[chunkCount] = size;
+        for (int i = 1; i < chunkCount; i++) {
+            boundaries[i] = nextLineStart(channel, Math.max(boundaries[i - 1], size * i / chunkCount));
+        }
+
+        List<ForkJoinTask<FleetCsvLoader>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            long start = boundaries[i];
+            long end = boundaries[i + 1];
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                FleetCsvLoader chunk = new FleetCsvLoader(new StringTable());
+                chunk.readLines(new ChannelInputStream(channel, start, end));
+                return chunk;
+            }));
+        }
+
+        this.fleet = fleet;
+        added = 0;
+        try {
+            for (ForkJoinTask<FleetCsvLoader> task : tasks) {
+                FleetCsvLoader chunk = task.get();
+                int problem = 0;
+                for (int i = 0; i < chunk.chunkBoats.size(); i++) {
+                    Boat boat = chunk.chunkBoats.get(i);
+                    String message = null;
+                    if (boat == null && problem < chunk.chunkProblems.size()) {
+                        message = chunk.chunkProblems.get(problem++);
+                    }
+                    acceptBoat(boat, message, lineNumber + chunk.chunkLines[i]);
+                }
+                lineNumber += chunk.lineNumber;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("CSV chunk could not be parsed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV load was interrupted");
+        } finally {
+            for (ForkJoinTask<FleetCsvLoader> task : tasks) {
+                task.cancel(false);
+            }
+        }
+
+        return added;
+
+    } // end of the loadInChunks method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the start of the first line at or after a position in a file.
+     * @param channel The open file
+     * @param position The position to search from
+     * @return The position just after the next newline, or the file size if there is none
+     * @throws IOException If the file cannot be read
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+
+        if (position == 0) {
+            return 0;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        position--; // a chunk may start right after a newline
+        while (true) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+    } // end of the nextLineStart method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads a stream line by line, handing each line to acceptLine.
+     * @param input The stream to read the CSV data from
+     * @throws IOException If the stream cannot be read
+     */
+    private void readLines(InputStream input) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean endOfInput = false;
+
+        while (!endOfInput || start < end) {
+            int newline = indexOf(buffer, (byte) '\n', start, end);
+
+            if (newline < 0 && !endOfInput) {
+                // The line continues past the buffered data: keep the partial line and read more
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (end == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = input.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    end += read;
+                }
+                continue;
+            }
+
+            int lineEnd = newline < 0 ? end : newline;
+            lineNumber++;
+            acceptLine(buffer, start, lineEnd);
+            start = newline < 0 ? end : newline + 1;
+        }
+
+    } // end of the readLines method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the error messages of the malformed lines, each starting with its line number. At most
+     * the first hundred errors are kept; getErrorCount gives the total.
+     * @return The error messages
+     */
+    public List<String> getErrors() {
+
+        return errors;
+
+    } // end of the getErrors method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of lines that could not be loaded.
+     * @return The number of malformed lines
+     */
+    public int getErrorCount() {
+
+        return errorCount;
+
+    } // end of the getErrorCount method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Parses the current line and either adds its boat to the fleet or, while parsing a chunk, keeps
+     * the result for the merge. Blank lines and comment lines are ignored.
+     * @param buffer The buffer holding the line
+     * @param start The position of the first byte of the line
+     * @param end The position just past the last byte of the line, excluding the newline
+     */
+    private void acceptLine(byte[] buffer, int start, int end) {
+
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start || buffer[start] == '#') {
+            return;
+        }
+
+        Boat boat = null;
+        String problem = null;
+        try {
+            boat = parseBoat(buffer, start, end);
+        } catch (IllegalArgumentException e) {
+            problem = e.getMessage();
+        }
+
+        if (fleet != null) {
+            acceptBoat(boat, problem, lineNumber);
+            return;
+        }
+
+        if (chunkBoats.size() == chunkLines.length) {
+            chunkLines = Arrays.copyOf(chunkLines, chunkLines.length * 2);
+        }
+        chunkLines[chunkBoats.size()] = (int) lineNumber;
+        chunkBoats.add(boat);
+        if (boat == null && chunkProblems.size() < MAX_REPORTED_ERRORS) {
+            chunkProblems.add(problem);
+        }
+
+    } // end of the acceptLine method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds a parsed boat to the fleet, or records why its line could not be loaded.
+     * @param boat The parsed boat, or null if the line was malformed
+     * @param problem What was wrong with the line, if it was malformed
+     * @param line The number of the line the boat came from
+     */
+    private void acceptBoat(Boat boat, String problem, long line) {
+
+        if (boat == null) {
+            recordError(line, problem);
+        } else if (fleet.addBoatIfAbsent(boat)) {
+            added++;
+        } else {
+            recordError(line, "there is already a boat named " + boat.getName());
+        }
+
+    } // end of the acceptBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records an error for a line that could not be loaded.
+     * @param line The number of the line
+     * @param message What was wrong with the line
+     */
+    private void recordError(long line, String message) {
+
+        errorCount++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("Line " + line + ": " + message);
+        }
+
+    } // end of the recordError method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Parses a boat from the fields of one CSV line: type, name, year, make/model, length, price and
+     * optionally expenses. Expenses must be neither negative nor more than the price, as for a boat
+     * spending from the menu. A seventh field that does not start like a number, and any fields after
+     * it, are ignored.
+     * @param buffer The buffer holding the line
+     * @param start The position of the first byte of the line
+     * @param end The position just past the last byte of the line
+     * @return The parsed boat
+     * @throws IllegalArgumentException If the line does not hold a valid boat
+     */
+    private Boat parseBoat(byte[] buffer, int start, int end) {
+
+        int field = 0;
+        int fieldStart = start;
+
+        for (int i = start; i <= end && field < MAX_FIELD_COUNT; i++) {
+            if (i == end || buffer[i] == ',') {
+                fieldStarts[field] = fieldStart;
+                fieldEnds[field] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field < FIELD_COUNT) {
+            throw new IllegalArgumentException("expected " + FIELD_COUNT + " fields but found " + field);
+        }
+
+        long priceCents = parseCents(buffer, fieldStarts[5], fieldEnds[5], "price");
+        long expensesCents = 0;
+        if (field > FIELD_COUNT && isNumber(buffer, fieldStarts[6], fieldEnds[6])) {
+            expensesCents = parseCents(buffer, fieldStarts[6], fieldEnds[6], "expenses");
+            Boat.checkExpenseCents(expensesCents);
+            if (expensesCents > priceCents) {
+                throw new IllegalArgumentException("expenses exceed the price");
+            }
+        }
+
+        return Boat.withCents(
+                parseType(buffer, fieldStarts[0], fieldEnds[0]),
+                new String(buffer, fieldStarts[1], fieldEnds[1] - fieldStarts[1], StandardCharsets.UTF_8),
+                parseInt(buffer, fieldStarts[2], fieldEnds[2], "year"),
+                makeModels.get(buffer, fieldStarts[3], fieldEnds[3]),
+                parseInt(buffer, fieldStarts[4], fieldEnds[4], "length"),
+                priceCents,
+                expensesCents
+        );
+
+    } // end of the parseBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Matches a boat type name, ignoring case, without creating a String.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @return The boat type
+     * @throws IllegalArgumentException If the field is not a boat type
+     */
+    private static Boat.BoatType parseType(byte[] buffer, int start, int end) {
+
+        start = skipSpaces(buffer, start, end);
+        end = trimSpaces(buffer, start, end);
+
+        for (Boat.BoatType type : BOAT_TYPES) {
+            String typeName = type.name();
+            if (typeName.length() != end - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < typeName.length() && toUpperCase(buffer[start + i]) == typeName.charAt(i)) {
+                i++;
+            }
+            if (i == typeName.length()) {
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("unknown boat type "
+                + new String(buffer, start, end - start, StandardCharsets.UTF_8));
+
+    } // end of the parseType method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Parses a whole number field.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @param fieldName The name of the field, used in the error message
+     * @return The value of the field
+     * @throws IllegalArgumentException If the field is not a whole number
+     */
+    private static int parseInt(byte[] buffer, int start, int end, String fieldName) {
+
+        start = skipSpaces(buffer, start, end);
+        end = trimSpaces(buffer, start, end);
+
+        boolean negative = start < end && buffer[start] == '-';
+        int i = negative || (start < end && buffer[start] == '+') ? start + 1 : start;
+        long value = 0;
+
+        if (i == end) {
+            throw new IllegalArgumentException(fieldName + " is missing");
+        }
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException(fieldName + " is not a whole number");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new IllegalArgumentException(fieldName + " is too large");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(fieldName + " is too large");
+        }
+
+        return (int) value;
+
+    } // end of the parseInt method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Parses an amount of money into whole cents. Plain decimals of up to MAX_EXACT_DIGITS digits are
+     * converted exactly, rounding half up past the second decimal place; anything else (exponents, very
+     * long values) is handed to Double.parseDouble and rounded to the nearest cent.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @param fieldName The name of the field, used in the error message
+     * @return The amount in cents
+     * @throws IllegalArgumentException If the field is not a number or is out of range
+     */
+    private static long parseCents(byte[] buffer, int start, int end, String fieldName) {
+
+        start = skipSpaces(buffer, start, end);
+        end = trimSpaces(buffer, start, end);
+
+        boolean negative = start < end && buffer[start] == '-';
+        int i = negative || (start < end && buffer[start] == '+') ? start + 1 : start;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (i == end && digits > 0 && digits <= MAX_EXACT_DIGITS) {
+            scale = Math.max(scale, 0);
+            long cents;
+            if (scale <= 2) {
+                long multiplier = POWERS_OF_TEN[2 - scale];
+                // Checked before multiplying, as the product of a long value could overflow
+                if (mantissa > Boat.MAX_CENTS / multiplier) {
+                    throw new IllegalArgumentException(fieldName + " is out of range");
+                }
+                cents = mantissa * multiplier;
+            } else {
+                long divisor = POWERS_OF_TEN[scale - 2];
+                cents = (mantissa + divisor / 2) / divisor;
+            }
+            if (cents > Boat.MAX_CENTS) {
+                throw new IllegalArgumentException(fieldName + " is out of range");
+            }
+            return negative ? -cents : cents;
+        }
+
+        double amount;
+        try {
+            amount = Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(fieldName + " is not a number");
+        }
+        try {
+            return Boat.toCents(amount);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(fieldName + " is out of range");
+        }
+
+    } // end of the parseCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks whether a field starts like a number: an optional sign followed by a digit, or by a decimal
+     * point and a digit.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @return True if the field starts like a number
+     */
+    private static boolean isNumber(byte[] buffer, int start, int end) {
+
+        int i = skipSpaces(buffer, start, end);
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            i++;
+        }
+        if (i < end && buffer[i] == '.') {
+            i++;
+        }
+
+        return i < end && buffer[i] >= '0' && buffer[i] <= '9';
+
+    } // end of the isNumber method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the position of the first non-space byte of a field.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @return The position of the first non-space byte, or end if there is none
+     */
+    private static int skipSpaces(byte[] buffer, int start, int end) {
+
+        while (start < end && buffer[start] == ' ') {
+            start++;
+        }
+
+        return start;
+
+    } // end of the skipSpaces method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the position just past the last non-space byte of a field.
+     * @param buffer The buffer holding the field
+     * @param start The position of the first byte of the field
+     * @param end The position just past the last byte of the field
+     * @return The position just past the last non-space byte, or start if there is none
+     */
+    private static int trimSpaces(byte[] buffer, int start, int end) {
+
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+
+        return end;
+
+    } // end of the trimSpaces method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Converts an ASCII letter to upper case, leaving any other byte alone.
+     * @param b The byte to convert
+     * @return The upper case character
+     */
+    private static char toUpperCase(byte b) {
+
+        return (char) (b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b);
+
+    } // end of the toUpperCase method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the first occurrence of a byte in part of a buffer.
+     * @param buffer The buffer to search
+     * @param value The byte to find
+     * @param start The position to start searching from
+     * @param end The position to stop searching at
+     * @return The position of the byte, or -1 if it is not found
+     */
+    private static int indexOf(byte[] buffer, byte value, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+
+    } // end of the indexOf method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * An input stream over one region of a file. It reads with positional reads, so several of them
+     * can read different regions of the same channel at once.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        /**
+         * The file being read
+         */
+        private final FileChannel channel;
+
+        /**
+         * The position of the next byte to read
+         */
+        private long position;
+
+        /**
+         * The position just past the end of the region
+         */
+        private final long end;
+
+        /**
+         * Constructor that creates a stream over a region of a file.
+         * @param fileChannel The file to read
+         * @param start The position of the first byte of the region
+         * @param regionEnd The position just past the end of the region
+         */
+        ChannelInputStream(FileChannel fileChannel, long start, long regionEnd) {
+
+            channel = fileChannel;
+            position = start;
+            end = regionEnd;
+
+        } // end of the constructor
+
+        /**
+         * Reads a single byte.
+         * @return The byte, or -1 at the end of the region
+         * @throws IOException If the file cannot be read
+         */
+        @Override
+        public int read() throws IOException {
+
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+
+        } // end of the read method
+
+        /**
+         * Reads up to len bytes of the region.
+         * @param b The array to read into
+         * @param off The position in the array to start at
+         * @param len The largest number of bytes to read
+         * @return The number of bytes read, or -1 at the end of the region
+         * @throws IOException If the file cannot be read
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (position >= end) {
+                return -1;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+
+            return read;
+
+        } // end of the read method
+
+    } // end of the ChannelInputStream class
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetCsvLoader class
+//========================================================================================================
@@ -0,0 +1,152 @@
+import java.io.IOException;
+//========================================================================================================
+/**
+ * Writes boats as CSV lines in the format read by FleetCsvLoader: type, name, year, make/model,
+ * length, price and expenses, with the amounts in dollars and two decimals. Lines are built in a
+ * reused buffer and passed on to the output in large pieces, so a large fleet can be written without
+ * holding the whole file in memory.
+ * <p>
+ * The CSV format has no quoting, so a name or make/model containing a comma or a line break cannot be
+ * written and is rejected rather than written as a line that would load differently.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetCsvWriter {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of characters collected before they are passed on to the output
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Where the CSV lines are written
+     */
+    private final Appendable out;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The characters not yet passed on to the output
+     */
+    private final StringBuilder buffer;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a CSV writer for the given output.
+     * @param output Where the CSV lines are written
+     */
+    public FleetCsvWriter(Appendable output) {
+
+        out = output;
+        buffer = new StringBuilder(BUFFER_SIZE);
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes every boat of a snapshot, with the expenses the snapshot read.
+     * @param snapshot The snapshot of the fleet
+     * @throws IOException If the output cannot be written or a boat cannot be written as CSV
+     */
+    public void writeFleet(FleetSnapshot snapshot) throws IOException {
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            writeBoat(snapshot.getBoat(i), snapshot.getExpensesCents(i));
+        }
+        flush();
+
+    } // end of the writeFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes a comment line, which FleetCsvLoader skips.
+     * @param comment The text of the comment, without line breaks
+     * @throws IOException If the output cannot be written
+     */
+    public void writeComment(String comment) throws IOException {
+
+        buffer.append("# ").append(comment).append('\n');
+        flushIfFull();
+
+    } // end of the writeComment method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the CSV line of one boat.
+     * @param boat The boat to write
+     * @param expensesCents The expenses to write for the boat, in cents
+     * @throws IOException If the output cannot be written or the boat cannot be written as CSV
+     */
+    public void writeBoat(Boat boat, long expensesCents) throws IOException {
+
+        buffer.append(boat.getType()).append(',');
+        appendText(boat.getName()).append(',');
+        buffer.append(boat.getYearOfManufacture()).append(',');
+        appendText(boat.getMakeModel()).append(',');
+        buffer.append(boat.getLengthInFeet()).append(',');
+        appendCents(buffer, boat.getPurchasePriceCents()).append(',');
+        appendCents(buffer, expensesCents).append('\n');
+        flushIfFull();
+
+    } // end of the writeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Passes everything written so far on to the output.
+     * @throws IOException If the output cannot be written
+     */
+    public void flush() throws IOException {
+
+        if (buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+
+    } // end of the flush method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Passes the buffer on to the output once it holds enough characters.
+     * @throws IOException If the output cannot be written
+     */
+    private void flushIfFull() throws IOException {
+
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+
+    } // end of the flushIfFull method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends a text field, checking that it holds nothing that would split the line.
+     * @param value The text to append
+     * @return The buffer
+     * @throws IOException If the text contains a comma or a line break
+     */
+    private StringBuilder appendText(String value) throws IOException {
+
+        String text = String.valueOf(value);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '\n' || c == '\r') {
+                buffer.setLength(buffer.lastIndexOf("\n") + 1);
+                throw new IOException("Cannot write \"" + text + "\" as a CSV field");
+            }
+        }
+
+        return buffer.append(text);
+
+    } // end of the appendText method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends an amount of money in dollars with two decimals and no padding.
+     * @param sb The builder the amount is appended to
+     * @param cents The amount, in cents
+     * @return The builder
+     */
+    static StringBuilder appendCents(StringBuilder sb, long cents) {
+
+        int remainder = (int) Math.abs(cents % 100);
+        if (cents < 0) {
+            sb.append('-');
+        }
+
+        return sb.append(Math.abs(cents / 100)).append('.').append((char) ('0' + remainder / 10))
+                .append((char) ('0' + remainder % 10));
+
+    } // end of the appendCents method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetCsvWriter class
+//========================================================================================================
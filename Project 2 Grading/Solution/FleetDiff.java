@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+//========================================================================================================
+/**
+ * The differences between a fleet and a manifest of the boats it should hold: the boats to add, the
+ * boats to remove and the boats whose details have changed. Applying only these differences brings
+ * the fleet in line with the manifest without rebuilding it, so a nightly manifest sync writes a
+ * journal record for each change rather than for every boat.
+ * <p>
+ * Boats are matched by name, ignoring case, as the fleet does. A boat has changed if its type, name,
+ * year, make/model, length or purchase price differ. Expenses are the fleet's own record of spending,
+ * so a changed boat keeps the expenses it has in the fleet, and only a new boat takes the expenses
+ * given in the manifest. A change that would lower a boat's price below what has already been spent
+ * on it is rejected: the boat is left as it is and its name is reported, as a boat may never have
+ * spent more than it cost.
+ * <p>
+ * The name lookups, which take most of the time on a large fleet, run as parallel streams once there
+ * are enough boats for that to pay off.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetDiff {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of boats from which the name lookups run as a parallel stream
+     */
+    private static final int PARALLEL_THRESHOLD = 100_000;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats in the manifest but not in the fleet
+     */
+    private final List<Boat> added;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The names of the boats in the fleet but not in the manifest
+     */
+    private final List<String> removed;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats whose details changed, as they should be after the change, with the fleet's expenses
+     */
+    private final List<Boat> changed;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The names of the boats left unchanged because the manifest prices them below their expenses
+     */
+    private final List<String> rejected;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of boats that are the same in the fleet and the manifest
+     */
+    private final int unchangedCount;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a set of differences.
+     * @param addedBoats The boats in the manifest but not in the fleet
+     * @param removedNames The names of the boats in the fleet but not in the manifest
+     * @param changedBoats The boats whose details changed, as they should be after the change
+     * @param rejectedNames The names of the boats the manifest prices below their expenses
+     * @param unchanged The number of boats that are the same in both
+     */
+    private FleetDiff(List<Boat> addedBoats, List<String> removedNames, List<Boat> changedBoats,
+                      List<String> rejectedNames, int unchanged) {
+
+        added = addedBoats;
+        removed = removedNames;
+        changed = changedBoats;
+        rejected = rejectedNames;
+        unchangedCount = unchanged;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Compares a fleet with a manifest, using one snapshot of the fleet so the differences are
+     * consistent even while expenses are being posted.
+     * @param fleet The fleet to bring in line with the manifest
+     * @param manifest The boats the fleet should hold
+     * @return The differences between them
+     */
+    public static FleetDiff compare(Fleet fleet, Fleet manifest) {
+
+        FleetSnapshot current = fleet.snapshot();
+        Boat[] wanted = new Boat[current.size()];
+        positions(current.size())
+                .forEach(i -> wanted[i] = manifest.getBoatByName(current.getBoat(i).getName()));
+
+        List<String> removedNames = new ArrayList<>();
+        List<Boat> changedBoats = new ArrayList<>();
+        List<String> rejectedNames = new ArrayList<>();
+        int unchanged = 0;
+        for (int i = 0; i < wanted.length; i++) {
+            Boat boat = current.getBoat(i);
+            if (wanted[i] == null) {
+                removedNames.add(boat.getName());
+            } else if (sameDetails(boat, wanted[i])) {
+                unchanged++;
+            } else if (wanted[i].getPurchasePriceCents() < current.getExpensesCents(i)) {
+                rejectedNames.add(boat.getName());
+            } else {
+                changedBoats.add(Boat.withCents(wanted[i].getType(), wanted[i].getName(),
+                        wanted[i].getYearOfManufacture(), wanted[i].getMakeModel(),
+                        wanted[i].getLengthInFeet(), wanted[i].getPurchasePriceCents(),
+                        current.getExpensesCents(i)));
+            }
+        }
+
+        // Every boat of the manifest matched one of the fleet unless it holds more boats than matched
+        List<Boat> addedBoats = new ArrayList<>();
+        FleetSnapshot listed = manifest.snapshot();
+        if (listed.size() > unchanged + changedBoats.size() + rejectedNames.size()) {
+            boolean[] isNew = new boolean[listed.size()];
+            positions(listed.size())
+                    .forEach(i -> isNew[i] = fleet.getBoatByName(listed.getBoat(i).getName()) == null);
+            for (int i = 0; i < isNew.length; i++) {
+                if (isNew[i]) {
+                    addedBoats.add(listed.getBoat(i));
+                }
+            }
+        }
+
+        return new FleetDiff(addedBoats, removedNames, changedBoats, rejectedNames, unchanged);
+
+    } // end of the compare method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a stream of the positions of a number of boats, parallel when there are enough of them.
+     * @param count The number of boats
+     * @return A stream of the positions
+     */
+    private static IntStream positions(int count) {
+
+        IntStream positions = IntStream.range(0, count);
+
+        return count >= PARALLEL_THRESHOLD ? positions.parallel() : positions;
+
+    } // end of the positions method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks whether two boats have the same details, apart from their expenses.
+     * @param boat The boat in the fleet
+     * @param wanted The boat in the manifest
+     * @return True if the type, name, year, make/model, length and purchase price are all the same
+     */
+    private static boolean sameDetails(Boat boat, Boat wanted) {
+
+        return boat.getType() == wanted.getType()
+                && boat.getName().equals(wanted.getName())
+                && boat.getYearOfManufacture() == wanted.getYearOfManufacture()
+                && boat.getMakeModel().equals(wanted.getMakeModel())
+                && boat.getLengthInFeet() == wanted.getLengthInFeet()
+                && boat.getPurchasePriceCents() == wanted.getPurchasePriceCents();
+
+    } // end of the sameDetails method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the boats in the manifest but not in the fleet.
+     * @return The boats to add
+     */
+    public List<Boat> getAdded() {
+
+        return Collections.unmodifiableList(added);
+
+    } // end of the getAdded method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the names of the boats in the fleet but not in the manifest.
+     * @return The names of the boats to remove
+     */
+    public List<String> getRemoved() {
+
+        return Collections.unmodifiableList(removed);
+
+    } // end of the getRemoved method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the boats whose details changed, as they should be after the change. Each replaces the
+     * boat of the same name and keeps its expenses.
+     * @return The replacement boats
+     */
+    public List<Boat> getChanged() {
+
+        return Collections.unmodifiableList(changed);
+
+    } // end of the getChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the names of the boats left as they are because the manifest lowers their price below
+     * the expenses they already have.
+     * @return The names of the rejected boats
+     */
+    public List<String> getRejected() {
+
+        return Collections.unmodifiableList(rejected);
+
+    } // end of the getRejected method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of boats that are the same in the fleet and the manifest.
+     * @return The number of unchanged boats
+     */
+    public int getUnchangedCount() {
+
+        return unchangedCount;
+
+    } // end of the getUnchangedCount method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a summary of the differences.
+     * @return The number of boats added, removed, changed, rejected and unchanged
+     */
+    @Override
+    public String toString() {
+
+        return added.size() + " added, " + removed.size() + " removed, " + changed.size() + " changed, "
+                + rejected.size() + " rejected, " + unchangedCount + " unchanged";
+
+    } // end of the toString method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetDiff class
+//========================================================================================================
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+//========================================================================================================
+/**
+ * Secondary indexes over the boats of a fleet, so boats can be found by type, by a range of years of
+ * manufacture, by a range of lengths or by a range of remaining budget without looking at every boat.
+ * Boats of each type are kept in a set per type; the ranges use sorted maps whose keys are the indexed
+ * value followed by the boat's lower-cased name, so boats with the same value are still told apart and
+ * come back in name order.
+ * <p>
+ * The index is owned by a Fleet, which adds and removes boats while holding its write lock and queries
+ * while holding its read lock. The remaining budget also changes when money is spent, which happens
+ * under the read lock, so the budget map is additionally guarded by its own monitor.
+ *
+ * @author Hashim Shahzad Khan
+ */
+class FleetIndex {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats of each type, in the order they were indexed
+     */
+    private final EnumMap<Boat.BoatType, LinkedHashSet<Boat>> byType;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats sorted by year of manufacture
+     */
+    private final TreeMap<Key, Boat> byYear;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats sorted by length in feet
+     */
+    private final TreeMap<Key, Boat> byLength;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats sorted by remaining budget in cents, each under the budget it had when last indexed.
+     * Guarded by its own monitor.
+     */
+    private final TreeMap<Key, Boat> byRemainingBudget;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates an index holding the given boats.
+     * @param boats The boats to index
+     */
+    FleetIndex(Collection<Boat> boats) {
+
+        byType = new EnumMap<>(Boat.BoatType.class);
+        for (Boat.BoatType type : Boat.BoatType.values()) {
+            byType.put(type, new LinkedHashSet<>());
+        }
+        byYear = new TreeMap<>();
+        byLength = new TreeMap<>();
+        byRemainingBudget = new TreeMap<>();
+
+        for (Boat boat : boats) {
+            add(boat);
+        }
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds a boat to every index.
+     * @param boat The boat that was added to the fleet
+     */
+    void add(Boat boat) {
+
+        String name = nameKey(boat);
+
+        if (boat.getType() != null) {
+            byType.get(boat.getType()).add(boat);
+        }
+        byYear.put(new Key(boat.getYearOfManufacture(), name), boat);
+        byLength.put(new Key(boat.getLengthInFeet(), name), boat);
+        synchronized (byRemainingBudget) {
+            long remaining = boat.getRemainingBudgetCents();
+            boat.setIndexedBudgetCents(remaining);
+            byRemainingBudget.put(new Key(remaining, name), boat);
+        }
+
+    } // end of the add method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Removes a boat from every index.
+     * @param boat The boat that was removed from the fleet
+     */
+    void remove(Boat boat) {
+
+        String name = nameKey(boat);
+
+        if (boat.getType() != null) {
+            byType.get(boat.getType()).remove(boat);
+        }
+        byYear.remove(new Key(boat.getYearOfManufacture(), name));
+        byLength.remove(new Key(boat.getLengthInFeet(), name));
+        synchronized (byRemainingBudget) {
+            byRemainingBudget.remove(new Key(boat.getIndexedBudgetCents(), name));
+        }
+
+    } // end of the remove method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Moves a boat to its new place in the budget index after money was spent on it. The boat is
+     * re-indexed under its current budget, so when several expenses race, the last one to get here
+     * leaves the boat in the right place.
+     * @param boat The boat that money was spent on
+     */
+    void budgetChanged(Boat boat) {
+
+        String name = nameKey(boat);
+
+        synchronized (byRemainingBudget) {
+            byRemainingBudget.remove(new Key(boat.getIndexedBudgetCents(), name));
+            long remaining = boat.getRemainingBudgetCents();
+            boat.setIndexedBudgetCents(remaining);
+            byRemainingBudget.put(new Key(remaining, name), boat);
+        }
+
+    } // end of the budgetChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats of one type.
+     * @param type The type of boat
+     * @return The boats of that type, in the order they were indexed
+     */
+    List<Boat> ofType(Boat.BoatType type) {
+
+        return type == null ? new ArrayList<>() : new ArrayList<>(byType.get(type));
+
+    } // end of the ofType method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats manufactured in a range of years.
+     * @param fromYear The first year, inclusive
+     * @param toYear The last year, inclusive
+     * @return The boats in the range, by year and then name
+     */
+    List<Boat> yearBetween(int fromYear, int toYear) {
+
+        return between(byYear, fromYear, toYear);
+
+    } // end of the yearBetween method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats within a range of lengths.
+     * @param minFeet The shortest length, inclusive
+     * @param maxFeet The longest length, inclusive
+     * @return The boats in the range, by length and then name
+     */
+    List<Boat> lengthBetween(int minFeet, int maxFeet) {
+
+        return between(byLength, minFeet, maxFeet);
+
+    } // end of the lengthBetween method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Finds the boats whose remaining budget is within a range.
+     * @param minCents The smallest remaining budget in cents, inclusive
+     * @param maxCents The largest remaining budget in cents, inclusive
+     * @return The boats in the range, by remaining budget and then name
+     */
+    List<Boat> remainingBudgetBetween(long minCents, long maxCents) {
+
+        synchronized (byRemainingBudget) {
+            return between(byRemainingBudget, minCents, maxCents);
+        }
+
+    } // end of the remainingBudgetBetween method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Copies the boats whose indexed value is within a range out of a sorted index.
+     * @param index The index to search
+     * @param from The smallest value, inclusive
+     * @param to The largest value, inclusive
+     * @return The boats in the range, in index order
+     */
+    private static List<Boat> between(TreeMap<Key, Boat> index, long from, long to) {
+
+        if (from > to) {
+            return new ArrayList<>();
+        }
+
+        // The empty name sorts before every other name and the null name after them all
+        return new ArrayList<>(index.subMap(new Key(from, ""), true, new Key(to, null), true).values());
+
+    } // end of the between method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Builds the name part of a boat's index keys, matching the fleet's name index.
+     * @param boat The boat
+     * @return The lower-cased name
+     */
+    private static String nameKey(Boat boat) {
+
+        return String.valueOf(boat.getName()).toLowerCase(Locale.ROOT);
+
+    } // end of the nameKey method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The key of a boat in a sorted index: the indexed value, then the boat's lower-cased name.
+     */
+    private static final class Key implements Comparable<Key> {
+
+        /**
+         * The indexed value
+         */
+        private final long value;
+
+        /**
+         * The lower-cased boat name, or null for a search bound after every name
+         */
+        private final String name;
+
+        /**
+         * Constructor that creates a key.
+         * @param indexedValue The indexed value
+         * @param boatName The lower-cased boat name, or null for a bound after every name
+         */
+        Key(long indexedValue, String boatName) {
+
+            value = indexedValue;
+            name = boatName;
+
+        } // end of the constructor
+
+        /**
+         * Orders keys by value and then by name, with the null name last.
+         * @param other The key to compare with
+         * @return A negative number, zero or a positive number as this key sorts before, with or after
+         */
+        @Override
+        public int compareTo(Key other) {
+
+            if (value != other.value) {
+                return Long.compare(value, other.value);
+            }
+            if (name == null || other.name == null) {
+                return name == other.name ? 0 : (name == null ? 1 : -1);
+            }
+
+            return name.compareTo(other.name);
+
+        } // end of the compareTo method
+
+    } // end of the Key class
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetIndex class
+//========================================================================================================
@@ -0,0 +1,547 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+//========================================================================================================
+/**
+ * An append-only journal of the changes made to a fleet since its last snapshot was saved. Every
+ * added boat, removed boat and expense is appended as one small record and forced to the disk before
+ * the change is acknowledged, so a change survives a crash or power loss as soon as it is made, without
+ * rewriting the fleet database. When the fleet is loaded, the journal is
+ * replayed on top of the snapshot; when a new snapshot is saved, the journal is emptied.
+ * <p>
+ * The journal starts with a header holding a magic number and a generation. Each snapshot stores the
+ * generation of the journal that continues from it, so a journal left over from an older snapshot
+ * (for example after a crash between saving the snapshot and emptying the journal) is recognised and
+ * discarded rather than applied twice.
+ * <p>
+ * Snapshots are saved while changes continue, so when a snapshot is taken the journal is rotated: the
+ * journal so far is renamed to a previous journal (the same file name followed by its generation) and a
+ * new journal, one generation later, records the changes made after the snapshot. Once the snapshot is
+ * safely saved the previous journals are deleted. If the save never completes, loading replays the
+ * previous journals from the generation of the older snapshot, then the new journal, so no change is
+ * lost or applied twice. Each record is laid out as:
+ * <pre>
+ *     int    length of the operation and its data
+ *     byte   operation: 'A' (add), 'R' (remove) or 'E' (expense)
+ *     ...    the boat record (add), the name (remove), or the name and a long amount in cents (expense)
+ *     int    CRC-32 of the operation and its data
+ * </pre>
+ * A record cut short by a crash fails its length or checksum test, and replay stops there.
+ * <p>
+ * Journals written before money was saved in whole cents start with a different magic number, and
+ * hold the amounts of their expenses and added boats as dollars in doubles. They are still replayed;
+ * if the current journal is one of them, it is kept as a previous journal and a new one continues
+ * after it, so the two layouts never share a file.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetJournal {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The magic number at the start of every journal ("FJR2")
+     */
+    private static final int MAGIC = 0x464A5232;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The magic number of journals whose amounts are dollars in doubles ("FJRN")
+     */
+    private static final int MAGIC_V1 = 0x464A524E;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the header: magic number and generation
+     */
+    private static final int HEADER_LENGTH = 4 + 8;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The largest record accepted when replaying, to catch corrupt length fields early
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The operation code of an added boat
+     */
+    private static final byte ADD = 'A';
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The operation code of a removed boat
+     */
+    private static final byte REMOVE = 'R';
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The operation code of an expense
+     */
+    private static final byte EXPENSE = 'E';
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The journal file
+     */
+    private final Path file;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The generation of the oldest previous journal still kept, or -1 if there is none
+     */
+    private long previousGeneration;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The journal file opened for appending, or null until the first change is recorded
+     */
+    private FileChannel channel;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The generation of the journal, matching the snapshot it continues from
+     */
+    private long generation;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The length of the valid part of the journal file, or 0 if the file must be started afresh
+     */
+    private long validLength;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of changes in the journal
+     */
+    private int entryCount;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The buffer each record is encoded in before it is appended
+     */
+    private ByteBuffer record;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The checksum used for every record
+     */
+    private final CRC32 checksum;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a journal kept in the given file. The file is not touched until the
+     * journal is replayed or a change is recorded.
+     * @param journalFile The journal file
+     */
+    public FleetJournal(Path journalFile) {
+
+        file = journalFile;
+        previousGeneration = -1;
+        channel = null;
+        generation = 0;
+        validLength = 0;
+        entryCount = 0;
+        record = ByteBuffer.allocate(256);
+        checksum = new CRC32();
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Applies the changes in the journal to a fleet just loaded from its snapshot. If previous journals
+     * continue from the snapshot, because a later snapshot was never completely saved, they are replayed
+     * first, oldest first, and the journal is replayed on top. A journal whose generation does not
+     * continue the snapshot is stale and is ignored. Replay stops at the first incomplete or damaged
+     * record, and later changes are appended after the last good one.
+     * @param fleet The fleet loaded from the snapshot
+     * @param snapshotGeneration The journal generation stored in the snapshot
+     * @return The number of changes applied
+     * @throws IOException If the journal cannot be read
+     */
+    public synchronized int replay(Fleet fleet, long snapshotGeneration) throws IOException {
+
+        entryCount = 0;
+
+        // Previous journals older than the snapshot are already in it; a crash kept them from being deleted
+        long older = snapshotGeneration - 1;
+        while (older >= 0 && Files.deleteIfExists(previousFile(older))) {
+            older--;
+        }
+
+        generation = snapshotGeneration;
+        previousGeneration = -1;
+        while (Files.exists(previousFile(generation))) {
+            replayFile(previousFile(generation), fleet, generation);
+            if (previousGeneration < 0) {
+                previousGeneration = generation;
+            }
+            generation++;
+        }
+        validLength = replayFile(file, fleet, generation);
+
+        // A journal in the old layout is set aside, so records in the new layout start a new file
+        if (validLength > 0 && readMagic(file) == MAGIC_V1) {
+            if (validLength > HEADER_LENGTH) {
+                Files.move(file, previousFile(generation), StandardCopyOption.REPLACE_EXISTING);
+                if (previousGeneration < 0) {
+                    previousGeneration = generation;
+                }
+                generation++;
+            }
+            validLength = 0;
+        }
+
+        return entryCount;
+
+    } // end of the replay method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Starts the journal afresh for a fleet that was not loaded from a snapshot, such as one imported
+     * from CSV, at a generation later than any already used. The first snapshot of the new fleet is
+     * then saved at a later generation than every saved fleet, so it is the one loaded next time, and
+     * neither it nor the new journal can take the name of a file that is still in use or match a
+     * journal left over from before.
+     * @param usedGeneration The highest generation of any saved fleet
+     * @throws IOException If the journal files cannot be listed
+     */
+    public synchronized void startAfter(long usedGeneration) throws IOException {
+
+        long highest = Math.max(usedGeneration, readHeaderGeneration(file));
+
+        // Previous journals are named after their generation
+        String prefix = file.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(file.toAbsolutePath().getParent(),
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            for (Path previous : files) {
+                try {
+                    highest = Math.max(highest,
+                            Long.parseLong(previous.getFileName().toString().substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a previous journal
+                }
+            }
+        }
+
+        close();
+        generation = highest + 1;
+        previousGeneration = -1;
+        validLength = 0;
+        entryCount = 0;
+
+    } // end of the startAfter method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the generation from the header of a journal file.
+     * @param journalFile The journal file
+     * @return The generation, or -1 if the file is missing or has no valid header
+     */
+    private static long readHeaderGeneration(Path journalFile) {
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(journalFile))) {
+            int magic = in.readInt();
+            return magic == MAGIC || magic == MAGIC_V1 ? in.readLong() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+
+    } // end of the readHeaderGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the magic number at the start of a journal file.
+     * @param journalFile The journal file
+     * @return The magic number, or 0 if the file is missing or too short
+     */
+    private static int readMagic(Path journalFile) {
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(journalFile))) {
+            return in.readInt();
+        } catch (IOException e) {
+            return 0;
+        }
+
+    } // end of the readMagic method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Applies the changes in one journal file, if it has the expected generation.
+     * @param journalFile The journal file
+     * @param fleet The fleet to change
+     * @param expectedGeneration The generation the journal must have
+     * @return The length of the valid part of the file, or 0 if it is missing or stale
+     * @throws IOException If the journal cannot be read
+     */
+    private long replayFile(Path journalFile, Fleet fleet, long expectedGeneration) throws IOException {
+
+        long length = 0;
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(journalFile), 1 << 16)) {
+            DataInputStream in = new DataInputStream(input);
+            int magic = in.readInt();
+            if ((magic != MAGIC && magic != MAGIC_V1) || in.readLong() != expectedGeneration) {
+                return 0;
+            }
+            boolean inCents = magic == MAGIC;
+            length = HEADER_LENGTH;
+
+            byte[] scratch = new byte[0xFFFF];
+            StringTable makeModels = new StringTable();
+            while (true) {
+                int recordLength = in.readInt();
+                if (recordLength < 1 || recordLength > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                if (record.capacity() < recordLength) {
+                    record = ByteBuffer.allocate(recordLength);
+                }
+                record.clear().limit(recordLength);
+                in.readFully(record.array(), 0, recordLength);
+                checksum.reset();
+                checksum.update(record.array(), 0, recordLength);
+                if (in.readInt() != (int) checksum.getValue()) {
+                    break;
+                }
+                apply(fleet, record, scratch, makeModels, inCents);
+                length += 4 + recordLength + 4;
+                entryCount++;
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            // No journal yet, or replay reached the end of the last complete record
+        }
+
+        return length;
+
+    } // end of the replayFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Applies one journal record to the fleet.
+     * @param fleet The fleet to change
+     * @param entry The record, positioned at its operation code
+     * @param scratch A buffer large enough for any String in the record
+     * @param makeModels The table that shares the make/model Strings of the boats added
+     * @param inCents True if the amounts are whole cents in longs, false if they are dollars in doubles
+     * @throws IOException If the record is malformed
+     */
+    private static void apply(Fleet fleet, ByteBuffer entry, byte[] scratch, StringTable makeModels,
+                              boolean inCents) throws IOException {
+
+        byte operation = entry.get();
+
+        if (operation == ADD) {
+            fleet.addBoat(FleetCodec.readBoat(entry, scratch, makeModels, inCents));
+        } else if (operation == REMOVE) {
+            fleet.removeBoat(FleetCodec.decode(entry, scratch));
+        } else if (operation == EXPENSE) {
+            Boat boat = fleet.getBoatByName(FleetCodec.decode(entry, scratch));
+            try {
+                if (inCents) {
+                    long amountCents = entry.getLong();
+                    if (boat != null) {
+                        boat.trySpendCents(amountCents);
+                    }
+                } else {
+                    double amount = entry.getDouble();
+                    if (boat != null) {
+                        boat.trySpend(amount);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // A negative or out-of-range amount logged before expenses were checked is skipped
+            }
+        } else {
+            throw new EOFException("Unknown journal operation " + operation);
+        }
+
+    } // end of the apply method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records a boat added to the fleet.
+     * @param boat The boat that was added
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void logAdd(Boat boat) throws IOException {
+
+        ByteBuffer boatRecord = FleetCodec.writeBoat(boat, ByteBuffer.allocate(256));
+        ByteBuffer entry = startRecord(1 + boatRecord.remaining());
+
+        entry.put(ADD).put(boatRecord);
+        append(entry);
+
+    } // end of the logAdd method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records a boat removed from the fleet.
+     * @param name The name of the boat that was removed
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void logRemove(String name) throws IOException {
+
+        byte[] encodedName = FleetCodec.encode(name);
+        ByteBuffer entry = startRecord(1 + 2 + encodedName.length);
+
+        entry.put(REMOVE).putShort((short) encodedName.length).put(encodedName);
+        append(entry);
+
+    } // end of the logRemove method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records an expense made on a boat.
+     * @param name The name of the boat
+     * @param amountCents The amount that was spent, in cents
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void logExpense(String name, long amountCents) throws IOException {
+
+        byte[] encodedName = FleetCodec.encode(name);
+        ByteBuffer entry = startRecord(1 + 2 + encodedName.length + 8);
+
+        entry.put(EXPENSE).putShort((short) encodedName.length).put(encodedName).putLong(amountCents);
+        append(entry);
+
+    } // end of the logExpense method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Prepares the record buffer for a record whose operation and data take the given length.
+     * @param length The length of the operation and its data
+     * @return The record buffer, positioned after the length field
+     */
+    private ByteBuffer startRecord(int length) {
+
+        if (record.capacity() < 4 + length + 4) {
+            record = ByteBuffer.allocate(4 + length + 4);
+        }
+
+        return record.clear().putInt(length);
+
+    } // end of the startRecord method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds the checksum to the record in the buffer, appends it to the journal with a single write and
+     * forces it to the disk.
+     * @param entry The record buffer, positioned after the record's data
+     * @throws IOException If the journal cannot be written
+     */
+    private void append(ByteBuffer entry) throws IOException {
+
+        checksum.reset();
+        checksum.update(entry.array(), 4, entry.position() - 4);
+        entry.putInt((int) checksum.getValue()).flip();
+
+        FileChannel journal = open();
+        while (entry.hasRemaining()) {
+            journal.write(entry);
+        }
+        journal.force(true);
+        validLength += entry.limit();
+        entryCount++;
+
+    } // end of the append method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Opens the journal for appending, cutting off anything after its last good record, or starting
+     * it afresh if it is missing or stale.
+     * @return The open journal file
+     * @throws IOException If the journal cannot be opened
+     */
+    private FileChannel open() throws IOException {
+
+        if (channel != null) {
+            return channel;
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validLength == 0) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putLong(generation);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+            FleetRepository.forceDirectory(file);
+            validLength = HEADER_LENGTH;
+        } else {
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+
+        return channel;
+
+    } // end of the open method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Starts a new journal for the changes made after a snapshot is taken. The journal so far is renamed
+     * to a previous journal, which is kept until a snapshot taken after it has been saved. The caller
+     * must make sure no change is made between taking the snapshot and rotating.
+     * @return The journal generation to store in the snapshot
+     * @throws IOException If the journal cannot be rotated
+     */
+    public synchronized long rotate() throws IOException {
+
+        open();
+        close();
+
+        Files.move(file, previousFile(generation), StandardCopyOption.REPLACE_EXISTING);
+        if (previousGeneration < 0) {
+            previousGeneration = generation;
+        }
+        generation++;
+        validLength = 0;
+        entryCount = 0;
+
+        return generation;
+
+    } // end of the rotate method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Deletes the previous journals once a snapshot taken after them has been saved.
+     * @param snapshotGeneration The journal generation stored in the saved snapshot
+     * @throws IOException If a previous journal cannot be deleted
+     */
+    public synchronized void discardPrevious(long snapshotGeneration) throws IOException {
+
+        while (previousGeneration >= 0 && previousGeneration < snapshotGeneration) {
+            Files.deleteIfExists(previousFile(previousGeneration));
+            previousGeneration = previousGeneration + 1 < generation ? previousGeneration + 1 : -1;
+        }
+
+    } // end of the discardPrevious method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the file a previous journal is kept in.
+     * @param journalGeneration The generation of the previous journal
+     * @return The journal file name followed by the generation
+     */
+    private Path previousFile(long journalGeneration) {
+
+        return file.resolveSibling(file.getFileName() + "." + journalGeneration);
+
+    } // end of the previousFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the generation of the journal.
+     * @return The journal generation
+     */
+    public synchronized long getGeneration() {
+
+        return generation;
+
+    } // end of the getGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of changes in the journal since the last snapshot.
+     * @return The number of journal entries
+     */
+    public synchronized int getEntryCount() {
+
+        return entryCount;
+
+    } // end of the getEntryCount method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Closes the journal file. It is opened again when the next change is recorded.
+     * @throws IOException If the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+
+    } // end of the close method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetJournal class
+//========================================================================================================
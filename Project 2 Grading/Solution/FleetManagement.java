@@ -1,10 +1,21 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 //========================================================================================================
 /**
  * Manages the fleet of boats, including loading and saving fleet data, displaying the menu,
  * and handling user inputs to perform actions such as printing boat information, adding a boat,
- * removing a boat, or managing boat expenses.
+ * removing a boat, managing boat expenses, or exporting the fleet to CSV and syncing it with a CSV
+ * manifest.
  * @author Hashim Shahzad Khan
  */
 public class FleetManagement {
@@ -20,21 +31,126 @@ public class FleetManagement {
     private static final String DB_FILE = "FleetData.db";
     //----------------------------------------------------------------------------------------------------
     /**
-     * The main method that initializes the fleet, loads data, and starts the menu system.
-     * @param args Command line arguments that may contain the CSV file location for initializing data
+     * The name of the journal file where changes made since the last save are appended
+     */
+    private static final String JOURNAL_FILE = "FleetData.journal";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The name of the manifest file naming the shard files, when the fleet is saved in shards
+     */
+    private static final String SHARD_MANIFEST_FILE = "FleetData.shards";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The name of the file the fleet is saved in when it is stored with Java serialization
+     */
+    private static final String SERIALIZED_FILE = "FleetData.ser";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The name of the file the fleet is saved in when it is stored as CSV
+     */
+    private static final String CSV_FILE = "FleetData.csv";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of journal entries after which the fleet is saved and the journal emptied
+     */
+    private static final int COMPACTION_THRESHOLD = 10_000;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * How long a background save waits for further save requests to join it, in milliseconds
+     */
+    private static final long SAVE_DELAY_MILLIS = 1_000;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The journal of changes made since the fleet was last saved
+     */
+    private static final FleetJournal journal = new FleetJournal(Paths.get(JOURNAL_FILE));
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves the fleet in the background; created with the first save
+     */
+    private static FleetSaveService saveService;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Where the fleet is saved; the binary database file unless another store is chosen
+     */
+    private static FleetRepository repository = new BinaryFleetRepository(Paths.get(DB_FILE));
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The most batch command errors kept for the report; later ones are only counted
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The main method that initializes the fleet, loads data, and starts the menu system. The first
+     * arguments may choose where the fleet is saved: "-store" followed by "binary", "serialized" or
+     * "csv" picks the file format, and "-shards" followed by a number saves the fleet in that many
+     * shard files. When the next arguments are "-batch" and a command file, the commands in the file
+     * are applied instead of starting the menu, and any further argument is the CSV file location.
+     * @param args Command line arguments that may contain the store, a batch command file and the CSV
+     *             file location for initializing data
      */
     public static void main(String[] args) {
 
         Fleet fleet = new Fleet();
 
-        loadFleetData(args, fleet);
-        displayMenu(fleet);
+        while (args.length >= 2 && (args[0].equals("-shards") || args[0].equals("-store"))) {
+            if (args[0].equals("-shards")) {
+                try {
+                    repository = new FleetShardStore(Paths.get(SHARD_MANIFEST_FILE),
+                            Integer.parseInt(args[1]));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid number of shards " + args[1]
+                            + ". Saving in one database file.");
+                }
+            } else {
+                FleetRepository store = repositoryNamed(args[1]);
+                if (store != null) {
+                    repository = store;
+                } else {
+                    System.out.println("Unknown store " + args[1] + ". Saving in the binary database file.");
+                }
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length >= 2 && args[0].equals("-batch")) {
+            loadFleetData(Arrays.copyOfRange(args, 2, args.length), fleet);
+            runBatch(fleet, args[1]);
+        } else {
+            loadFleetData(args, fleet);
+            displayMenu(fleet);
+        }
 
     } // end of the main method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the repository for a store named on the command line.
+     * @param name "binary", "serialized" or "csv"
+     * @return The repository, or null if the name is not known
+     */
+    private static FleetRepository repositoryNamed(String name) {
+
+        switch (name.toLowerCase()) {
+            case "binary":
+                return new BinaryFleetRepository(Paths.get(DB_FILE));
+            case "serialized":
+                return new SerializedFleetRepository(Paths.get(SERIALIZED_FILE));
+            case "csv":
+                return new CsvFleetRepository(Paths.get(CSV_FILE));
+            default:
+                return null;
+        }
+
+    } // end of the repositoryNamed method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Loads the fleet data either from a CSV file (if provided as a command line argument)
-     * or from the serialized database file.
+     * or from the repository followed by the changes in the journal. Databases saved with Java
+     * serialization by earlier versions are still read. A saved fleet that is damaged is set aside,
+     * not loaded. If the fleet was also saved in another store, whichever store was saved last is
+     * loaded, so switching between stores keeps every change. A fleet imported from CSV, or started
+     * afresh because the saved fleet is damaged, continues from a later journal generation than any
+     * store or journal file, so it counts as saved last.
      * @param args Command line arguments (CSV file location)
      * @param fleet The fleet object to load data into
      */
@@ -42,61 +158,360 @@ public class FleetManagement {
 
         if (args.length > 0) {
             // First run: Load from CSV file
-            try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] data = line.split(",");
-                    Boat boat = new Boat(
-                            Boat.BoatType.valueOf(data[0].toUpperCase()),
-                            data[1],
-                            Integer.parseInt(data[2]),
-                            data[3],
-                            Integer.parseInt(data[4]),
-                            Double.parseDouble(data[5])
-                    );
-                    fleet.addBoat(boat);
-                }
-                saveFleetData(fleet); // Save fleet data after loading from CSV
+            startNewGeneration(highestGeneration());
+            FleetCsvLoader loader = new FleetCsvLoader();
+            try {
+                loader.load(args[0], fleet);
+                for (String error : loader.getErrors()) {
+                    System.out.println("Skipped CSV " + error);
+                }
+                if (loader.getErrorCount() > loader.getErrors().size()) {
+                    System.out.println("Skipped " + (loader.getErrorCount() - loader.getErrors().size())
+                            + " more malformed CSV lines");
+                }
+                saveService(fleet).requestSave(); // Save fleet data in the background after loading from CSV
             } catch (IOException e) {
                 System.out.println("Error reading CSV file. Starting with an empty fleet.");
             }
         } else {
-            // Subsequent runs: Load from serialized .db file
-            try (ObjectInputStream input = new ObjectInputStream(new FileInputStream(DB_FILE))) {
-                Fleet loadedFleet = (Fleet) input.readObject();
-                fleet.getBoats().addAll(loadedFleet.getBoats());
-            } catch (IOException | ClassNotFoundException e) {
-                System.out.println("No existing database found. Starting with an empty fleet.");
+            // Subsequent runs: Load whichever store was saved last, then the journal
+            long usedGeneration = highestGeneration(); // Read before a damaged file is set aside
+            long generation = loadRepository(newestRepository(), fleet);
+            if (generation < 0) {
+                startNewGeneration(usedGeneration);
+            } else {
+                try {
+                    if (journal.replay(fleet, generation) > 0) {
+                        repository.allBoatsChanged();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Error reading the journal file.");
+                }
+            }
+            // Boats renamed or left out because another boat had the same name apart from case
+            for (String message : fleet.getNameConflicts()) {
+                System.out.println(message);
             }
         }
 
     } // end of the loadFleetData method
     //----------------------------------------------------------------------------------------------------
     /**
-     * Saves the current fleet data to a serialized database file.
-     * @param fleet The fleet object to be saved
+     * Returns the store that was saved last, judged by the journal generation each one recorded. The
+     * chosen store wins a tie, and is returned if no store has been saved. It is also returned if its
+     * file is there but has no readable generation, so the damaged file is set aside rather than
+     * overwritten by an older store's fleet.
+     * @return The repository to load the fleet from
      */
-    public static void saveFleetData(Fleet fleet) {
+    private static FleetRepository newestRepository() {
+
+        FleetRepository newest = repository;
+        long newestGeneration = repository.readGeneration();
+        if (newestGeneration < 0 && Files.exists(repository.getFile())) {
+            return repository;
+        }
+        for (FleetRepository other : otherRepositories()) {
+            long generation = other.readGeneration();
+            if (generation > newestGeneration) {
+                newest = other;
+                newestGeneration = generation;
+            }
+        }
+
+        return newest;
+
+    } // end of the newestRepository method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the stores the fleet may have been saved in besides the chosen one.
+     * @return The other repositories
+     */
+    private static List<FleetRepository> otherRepositories() {
+
+        FleetRepository[] stores = {
+                new BinaryFleetRepository(Paths.get(DB_FILE)),
+                new FleetShardStore(Paths.get(SHARD_MANIFEST_FILE), 1),
+                new SerializedFleetRepository(Paths.get(SERIALIZED_FILE)),
+                new CsvFleetRepository(Paths.get(CSV_FILE))
+        };
+
+        List<FleetRepository> others = new ArrayList<>();
+        for (FleetRepository store : stores) {
+            if (!store.getFile().equals(repository.getFile())) {
+                others.add(store);
+            }
+        }
+
+        return others;
+
+    } // end of the otherRepositories method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the highest journal generation any store has used, including files a damaged save left
+     * behind.
+     * @return The highest generation, or -1 if nothing has been saved
+     */
+    private static long highestGeneration() {
 
-        ObjectOutputStream out = null;
+        long highest = repository.readHighestGeneration();
+        for (FleetRepository other : otherRepositories()) {
+            highest = Math.max(highest, other.readHighestGeneration());
+        }
+
+        return highest;
+
+    } // end of the highestGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Starts the journal at a later generation than any store or journal file has used, for a fleet
+     * that was not loaded from a store. Its first save then counts as the newest at the next start,
+     * and cannot overwrite a file that another store still names.
+     * @param usedGeneration The highest generation any store has used
+     */
+    private static void startNewGeneration(long usedGeneration) {
 
         try {
-            out = new ObjectOutputStream(new FileOutputStream(DB_FILE));
-            out.writeObject(fleet);
+            journal.startAfter(usedGeneration);
         } catch (IOException e) {
-            System.out.println("Error saving database file.");
-        } finally {
-            if (out != null) {
-                try {
-                    out.close(); // Ensure the output stream is closed
-                } catch (IOException e) {
-                    System.out.println("Error closing the database file.");
-                }
+            System.out.println("Error reading the journal files.");
+        }
+
+    } // end of the startNewGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the fleet from a repository. A damaged file is renamed out of the way of the next save, in
+     * case it can be recovered.
+     * @param source The repository to load the fleet from
+     * @param fleet The fleet object to load data into
+     * @return The journal generation stored with the fleet, 0 if there is no saved fleet, or -1 if it is
+     *         damaged
+     */
+    private static long loadRepository(FleetRepository source, Fleet fleet) {
+
+        Path file = source.getFile();
+        try {
+            return source.load(fleet);
+        } catch (NoSuchFileException e) {
+            System.out.println("No existing database found. Starting with an empty fleet.");
+        } catch (IOException e) {
+            try {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".damaged"),
+                        StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("The " + source.getName() + " file " + file
+                        + " is damaged and was kept as " + file + ".damaged. Starting with an empty fleet.");
+            } catch (IOException moveError) {
+                System.out.println("The " + source.getName() + " file " + file
+                        + " is damaged. Starting with an empty fleet.");
             }
+            return -1;
         }
 
+        return 0;
+
+    } // end of the loadRepository method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves the current fleet data to the repository straight away, starting a new journal for the
+     * changes made from then on.
+     * @param fleet The fleet object to be saved
+     */
+    public static void saveFleetData(Fleet fleet) {
+
+        saveService(fleet).save();
+
     } // end of the saveFleetData method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the service that saves the fleet, creating it on first use together with a shutdown hook
+     * that saves the fleet if the program is stopped without going through the exit option.
+     * @param fleet The fleet object to be saved
+     * @return The save service
+     */
+    private static synchronized FleetSaveService saveService(Fleet fleet) {
+
+        if (saveService == null) {
+            saveService = new FleetSaveService(fleet, repository, journal, SAVE_DELAY_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(saveService::close, "fleet-save-on-exit"));
+        }
+
+        return saveService;
+
+    } // end of the saveService method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Adds a boat to the fleet and appends it to the journal. Both happen while holding the journal's
+     * monitor, so a background save sees the boat either in its snapshot or in the new journal.
+     * @param fleet The fleet to add the boat to
+     * @param boat The boat to add
+     * @return True if the boat was added, false if there is already a boat with its name
+     */
+    private static boolean addBoat(Fleet fleet, Boat boat) {
+
+        synchronized (journal) {
+            if (!fleet.addBoatIfAbsent(boat)) {
+                return false;
+            }
+            try {
+                journal.logAdd(boat);
+            } catch (IOException e) {
+                System.out.println("Error writing the journal file.");
+            }
+            repository.boatChanged(boat.getName());
+        }
+        compactJournal(fleet);
+
+        return true;
+
+    } // end of the addBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Removes a boat from the fleet and appends the removal to the journal, while holding the journal's
+     * monitor.
+     * @param fleet The fleet to remove the boat from
+     * @param name The name of the boat to remove
+     * @return True if the boat was removed, false if there is no boat with that name
+     */
+    private static boolean removeBoat(Fleet fleet, String name) {
+
+        synchronized (journal) {
+            if (!fleet.removeBoat(name)) {
+                return false;
+            }
+            try {
+                journal.logRemove(name);
+            } catch (IOException e) {
+                System.out.println("Error writing the journal file.");
+            }
+            repository.boatChanged(name);
+        }
+        compactJournal(fleet);
+
+        return true;
+
+    } // end of the removeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Spends money on a boat if its budget allows and appends the expense to the journal, while holding
+     * the journal's monitor.
+     * @param fleet The fleet the boat belongs to
+     * @param boat The boat to spend the money on
+     * @param amount The amount to spend
+     * @return True if the expense was permitted, false if it would exceed the boat's budget
+     * @throws IllegalArgumentException If the amount is negative, not a number, infinite or too large
+     */
+    private static boolean spend(Fleet fleet, Boat boat, double amount) {
+
+        long amountCents = Boat.toExpenseCents(amount);
+
+        synchronized (journal) {
+            if (!boat.trySpendCents(amountCents)) {
+                return false;
+            }
+            try {
+                journal.logExpense(boat.getName(), amountCents);
+            } catch (IOException e) {
+                System.out.println("Error writing the journal file.");
+            }
+            repository.boatChanged(boat.getName());
+        }
+        compactJournal(fleet);
+
+        return true;
+
+    } // end of the spend method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Replaces a boat with a changed version of the same name and appends the removal and the addition
+     * to the journal, all while holding the journal's monitor.
+     * @param fleet The fleet the boat belongs to
+     * @param boat The changed boat, with the expenses it should keep
+     */
+    private static void replaceBoat(Fleet fleet, Boat boat) {
+
+        synchronized (journal) {
+            fleet.removeBoat(boat.getName());
+            fleet.addBoat(boat);
+            try {
+                journal.logRemove(boat.getName());
+                journal.logAdd(boat);
+            } catch (IOException e) {
+                System.out.println("Error writing the journal file.");
+            }
+            repository.boatChanged(boat.getName());
+        }
+        compactJournal(fleet);
+
+    } // end of the replaceBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the fleet to a CSV file in the format it is imported from, with each boat's expenses in a
+     * seventh field, so the file can be imported or synced back. The boats are written from one
+     * snapshot, a buffer at a time.
+     * @param fleet The fleet to export
+     * @param csvFile The CSV file to write
+     * @return The number of boats written
+     * @throws IOException If the file cannot be written or a boat cannot be written as CSV
+     */
+    private static int exportFleetData(Fleet fleet, String csvFile) throws IOException {
+
+        FleetSnapshot snapshot = fleet.snapshot();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8)) {
+            new FleetCsvWriter(out).writeFleet(snapshot);
+        }
+
+        return snapshot.size();
+
+    } // end of the exportFleetData method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Brings the fleet in line with a CSV manifest by applying only the differences: boats missing
+     * from the manifest are removed, changed boats are replaced and new boats are added, each through
+     * the journal like a change made from the menu. A boat the manifest prices below its expenses is
+     * kept as it is and reported in the differences. A manifest with malformed lines is not applied at
+     * all, since the boats on those lines would otherwise be removed.
+     * @param fleet The fleet to sync
+     * @param csvFile The CSV manifest
+     * @return The differences that were applied
+     * @throws IOException If the manifest cannot be read or has malformed lines
+     */
+    private static FleetDiff syncFleetData(Fleet fleet, String csvFile) throws IOException {
+
+        Fleet manifest = new Fleet();
+        FleetCsvLoader loader = new FleetCsvLoader();
+        loader.load(csvFile, manifest);
+        if (loader.getErrorCount() > 0) {
+            throw new StreamCorruptedException(loader.getErrorCount()
+                    + " malformed lines in the manifest, " + loader.getErrors().get(0));
+        }
+
+        FleetDiff diff = FleetDiff.compare(fleet, manifest);
+        for (String name : diff.getRemoved()) {
+            removeBoat(fleet, name);
+        }
+        for (Boat boat : diff.getChanged()) {
+            replaceBoat(fleet, boat);
+        }
+        for (Boat boat : diff.getAdded()) {
+            addBoat(fleet, boat);
+        }
+
+        return diff;
+
+    } // end of the syncFleetData method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Asks for a background save, which starts a new journal, once the journal has grown past the
+     * threshold.
+     * @param fleet The fleet to save
+     */
+    private static void compactJournal(Fleet fleet) {
+
+        if (journal.getEntryCount() >= COMPACTION_THRESHOLD) {
+            saveService(fleet).requestSave();
+        }
+
+    } // end of the compactJournal method
+    //----------------------------------------------------------------------------------------------------
     /**
      * Displays the main menu for the fleet management system, allowing the user to select
      * actions such as printing boat details, adding a boat, removing a boat, or managing expenses.
@@ -109,28 +524,24 @@ public class FleetManagement {
         System.out.println("--------------------------------------");
 
         do {
-            System.out.print("(P)rint, (A)dd, (R)emove, (E)xpense, e(X)it : ");
+            System.out.print("(P)rint, (A)dd, (R)emove, (E)xpense, (T)op, (S)tatistics, (C)SV export, "
+                    + "s(Y)nc, e(X)it : ");
             option = keyboard.nextLine().trim().toUpperCase();
 
             switch (option) {
                 case "P":
                     System.out.println();
-                    System.out.println(fleet);
+                    printFleet(fleet, System.out);
+                    System.out.println();
                     break;
                 case "A":
                     System.out.print("Please enter the new boat CSV data          : ");
                     String csvData = keyboard.nextLine();
                     try {
-                        String[] data = csvData.split(",");
-                        Boat newBoat = new Boat(
-                                Boat.BoatType.valueOf(data[0].toUpperCase()),
-                                data[1],
-                                Integer.parseInt(data[2]),
-                                data[3],
-                                Integer.parseInt(data[4]),
-                                Double.parseDouble(data[5])
-                        );
-                        fleet.addBoat(newBoat);
+                        Boat newBoat = parseBoat(csvData);
+                        if (!addBoat(fleet, newBoat)) {
+                            System.out.println("There is already a boat named " + newBoat.getName());
+                        }
                     } catch (Exception e) {
                         System.out.println("Invalid boat data. Please try again.");
                     }
@@ -139,7 +550,7 @@ public class FleetManagement {
                 case "R":
                     System.out.print("Which boat do you want to remove?           : ");
                     String nameToRemove = keyboard.nextLine();
-                    if (!fleet.removeBoat(nameToRemove)) {
+                    if (!removeBoat(fleet, nameToRemove)) {
                         System.out.println("Cannot find boat " + nameToRemove);
                     }
                     System.out.println();
@@ -156,20 +567,60 @@ public class FleetManagement {
                     System.out.print("How much do you want to spend?              : ");
                     try {
                         double amount = Double.parseDouble(keyboard.nextLine());
-                        if (boat.canSpend(amount)) {
-                            boat.addExpense(amount);
+                        if (spend(fleet, boat, amount)) {
                             System.out.printf("Expense authorized, $%.2f spent.\n", boat.getExpenses());
                         } else {
                             System.out.printf("Expense not permitted, only $%.2f left to spend.\n",
-                                    boat.getPurchasePrice() - boat.getExpenses());
+                                    boat.getRemainingBudget());
                         }
-                    } catch (NumberFormatException e) {
+                    } catch (IllegalArgumentException e) {
+                        // Covers text that is not a number as well as negative or out-of-range amounts
                         System.out.println("Invalid amount. Please try again.");
                     }
                     System.out.println();
                     break;
+                case "T":
+                    System.out.print("How many boats do you want to see?          : ");
+                    try {
+                        int count = Integer.parseInt(keyboard.nextLine().trim());
+                        if (count < 1) {
+                            System.out.println("Invalid number. Please try again.");
+                        } else {
+                            System.out.println();
+                            printTop(fleet, count, System.out);
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid number. Please try again.");
+                    }
+                    System.out.println();
+                    break;
+                case "S":
+                    System.out.println();
+                    printStatistics(fleet, System.out);
+                    System.out.println();
+                    break;
+                case "C":
+                    System.out.print("Which file do you want to export to?        : ");
+                    String exportFile = keyboard.nextLine().trim();
+                    try {
+                        System.out.println("Exported " + exportFleetData(fleet, exportFile) + " boats.");
+                    } catch (IOException e) {
+                        System.out.println("Error exporting the fleet: " + e.getMessage());
+                    }
+                    System.out.println();
+                    break;
+                case "Y":
+                    System.out.print("Which manifest do you want to sync with?    : ");
+                    String manifestFile = keyboard.nextLine().trim();
+                    try {
+                        System.out.println("Synced the fleet: " + syncFleetData(fleet, manifestFile) + ".");
+                    } catch (IOException e) {
+                        System.out.println("Error syncing the fleet: " + e.getMessage());
+                    }
+                    System.out.println();
+                    break;
                 case "X":
-                    saveFleetData(fleet);
+                    closeFleetData(fleet);
                     System.out.println();
                     System.out.println("Exiting the Fleet Management System");
                     break;
@@ -181,5 +632,285 @@ public class FleetManagement {
 
     } // end of the displayMenu method
     //----------------------------------------------------------------------------------------------------
+    /**
+     * Applies the commands in a command file to the fleet without prompting, then saves the fleet and
+     * reports how many commands were applied, how fast, and which lines failed. Each line holds one
+     * command: "P" prints the fleet, "A,&lt;boat CSV data&gt;" adds a boat, "R,&lt;name&gt;" removes a
+     * boat, "E,&lt;name&gt;,&lt;amount&gt;" spends on a boat, "T,&lt;count&gt;" prints the boats with the
+     * most spent on them, "S" prints spending statistics, "C,&lt;file&gt;" exports the fleet to a CSV
+     * file, "Y,&lt;file&gt;" syncs the fleet with a CSV manifest and "X" stops reading the file. Blank
+     * lines and lines starting with '#' are ignored.
+     * @param fleet The fleet object containing the boats to manage
+     * @param commandFile The name of the command file
+     */
+    public static void runBatch(Fleet fleet, String commandFile) {
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        List<String> errors = new ArrayList<>();
+        int errorCount = 0;
+        int commandCount = 0;
+        int lineNumber = 0;
+        long start = System.nanoTime();
+
+        try (BufferedReader in = new BufferedReader(new FileReader(commandFile), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.equalsIgnoreCase("X")) {
+                    break;
+                }
+                commandCount++;
+                String error = applyCommand(fleet, line, out);
+                if (error != null) {
+                    if (errorCount < MAX_REPORTED_ERRORS) {
+                        errors.add("Line " + lineNumber + ": " + error);
+                    }
+                    errorCount++;
+                }
+            }
+        } catch (IOException e) {
+            out.println("Error reading the command file after line " + lineNumber + ".");
+        }
+
+        long elapsed = System.nanoTime() - start;
+        out.printf("Applied %d commands in %.1f ms (%.0f commands/s), %d failed.\n", commandCount,
+                elapsed / 1e6, commandCount * 1e9 / Math.max(elapsed, 1), errorCount);
+        for (String error : errors) {
+            out.println(error);
+        }
+        if (errorCount > errors.size()) {
+            out.println((errorCount - errors.size()) + " more commands failed");
+        }
+        out.flush();
+
+        closeFleetData(fleet);
+        System.out.printf("Saved the fleet in %.1f ms.\n", saveService(fleet).getLastSaveMillis());
+
+    } // end of the runBatch method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Applies one batch command to the fleet.
+     * @param fleet The fleet object containing the boats to manage
+     * @param line The command line, trimmed and not empty
+     * @param out Where the output of the command is written
+     * @return A description of why the command failed, or null if it succeeded
+     */
+    private static String applyCommand(Fleet fleet, String line, PrintWriter out) {
+
+        int comma = line.indexOf(',');
+        String command = (comma < 0 ? line : line.substring(0, comma)).trim().toUpperCase();
+        String argument = comma < 0 ? "" : line.substring(comma + 1).trim();
+
+        switch (command) {
+            case "P":
+                printFleet(fleet, out);
+                out.println();
+                return null;
+            case "T":
+                int count;
+                try {
+                    count = Integer.parseInt(argument);
+                } catch (NumberFormatException e) {
+                    return "Invalid number " + argument;
+                }
+                if (count < 1) {
+                    return "Invalid number " + argument;
+                }
+                printTop(fleet, count, out);
+                out.println();
+                return null;
+            case "S":
+                printStatistics(fleet, out);
+                out.println();
+                return null;
+            case "A":
+                Boat newBoat;
+                try {
+                    newBoat = parseBoat(argument);
+                } catch (IllegalArgumentException e) {
+                    return "Invalid boat data " + argument;
+                }
+                if (!addBoat(fleet, newBoat)) {
+                    return "There is already a boat named " + newBoat.getName();
+                }
+                return null;
+            case "R":
+                if (!removeBoat(fleet, argument)) {
+                    return "Cannot find boat " + argument;
+                }
+                return null;
+            case "C":
+                try {
+                    out.println("Exported " + exportFleetData(fleet, argument) + " boats.");
+                } catch (IOException e) {
+                    return "Cannot export to " + argument + ": " + e.getMessage();
+                }
+                return null;
+            case "Y":
+                try {
+                    long syncStart = System.nanoTime();
+                    FleetDiff diff = syncFleetData(fleet, argument);
+                    for (String rejected : diff.getRejected()) {
+                        out.println("Kept " + rejected
+                                + " unchanged: the manifest prices it below its expenses.");
+                    }
+                    out.printf("Synced the fleet: %s in %.1f ms.\n", diff,
+                            (System.nanoTime() - syncStart) / 1e6);
+                } catch (IOException e) {
+                    return "Cannot sync with " + argument + ": " + e.getMessage();
+                }
+                return null;
+            case "E":
+                // The amount follows the last comma, so boat names may contain commas
+                int lastComma = argument.lastIndexOf(',');
+                if (lastComma < 0) {
+                    return "Missing expense amount";
+                }
+                String name = argument.substring(0, lastComma).trim();
+                Boat boat = fleet.getBoatByName(name);
+                if (boat == null) {
+                    return "Cannot find boat " + name;
+                }
+                String amountText = argument.substring(lastComma + 1).trim();
+                try {
+                    if (!spend(fleet, boat, Double.parseDouble(amountText))) {
+                        return String.format("Expense not permitted on %s, only $%.2f left to spend", name,
+                                boat.getRemainingBudget());
+                    }
+                } catch (IllegalArgumentException e) {
+                    return "Invalid amount " + amountText;
+                }
+                return null;
+            default:
+                return "Invalid command " + command;
+        }
+
+    } // end of the applyCommand method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Prints the fleet report a piece at a time, rather than building the whole report first.
+     * @param fleet The fleet to print
+     * @param out Where the report is printed
+     */
+    private static void printFleet(Fleet fleet, Appendable out) {
+
+        try {
+            new FleetReportWriter(out).writeReport(fleet);
+        } catch (IOException e) {
+            System.out.println("Error printing the fleet report.");
+        }
+
+    } // end of the printFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Prints the boats with the most spent on them, in the layout of the fleet report, showing the
+     * expenses they were ranked by. The heading gives the number of boats listed, which is less than
+     * the count asked for if the fleet is smaller.
+     * @param fleet The fleet to search
+     * @param count The largest number of boats to print, at least 1
+     * @param out Where the boats are printed
+     */
+    private static void printTop(Fleet fleet, int count, Appendable out) {
+
+        try {
+            FleetReportWriter report = new FleetReportWriter(out);
+            FleetSnapshot top = FleetAnalytics.topSnapshotBySpend(fleet.snapshot(), count);
+            out.append("Top ").append(String.valueOf(top.size())).append(" boats by expenses:\n");
+            for (int i = 0; i < top.size(); i++) {
+                report.writeBoat(top.getBoat(i), top.getExpensesCents(i));
+            }
+            report.flush();
+        } catch (IOException e) {
+            System.out.println("Error printing the top boats.");
+        }
+
+    } // end of the printTop method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Prints the number of boats, purchase cost, expenses and expenses per foot of the fleet, by boat
+     * type, by year of manufacture and overall, all from the same snapshot of the fleet.
+     * @param fleet The fleet to describe
+     * @param out Where the statistics are printed
+     */
+    private static void printStatistics(Fleet fleet, Appendable out) {
+
+        FleetSnapshot snapshot = fleet.snapshot();
+
+        try {
+            out.append("Statistics by type:\n");
+            for (Map.Entry<Boat.BoatType, FleetAnalytics.Summary> group
+                    : FleetAnalytics.byType(snapshot).entrySet()) {
+                out.append(formatSummary(group.getKey().toString(), group.getValue()));
+            }
+            out.append("Statistics by year:\n");
+            for (Map.Entry<Integer, FleetAnalytics.Summary> group
+                    : FleetAnalytics.byYear(snapshot).entrySet()) {
+                out.append(formatSummary(group.getKey().toString(), group.getValue()));
+            }
+            out.append(formatSummary("Total", FleetAnalytics.overall(snapshot)));
+        } catch (IOException e) {
+            System.out.println("Error printing the statistics.");
+        }
+
+    } // end of the printStatistics method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Formats one line of statistics.
+     * @param label The name of the group
+     * @param summary The totals of the group
+     * @return The formatted line
+     */
+    private static String formatSummary(String label, FleetAnalytics.Summary summary) {
+
+        return String.format("    %-8s %8d boats : Paid $%14.2f : Spent $%14.2f : $%10.2f per foot\n", label,
+                summary.getCount(), summary.getPurchaseCostCents() / 100.0, summary.getSpentCents() / 100.0,
+                summary.getSpendPerFoot());
+
+    } // end of the formatSummary method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Creates a boat from a line of boat CSV data, as entered for the add command.
+     * @param csvData The type, name, year, make/model, length and purchase price, separated by commas
+     * @return The new boat
+     * @throws IllegalArgumentException If the data has too few fields or a field is invalid
+     */
+    private static Boat parseBoat(String csvData) {
+
+        String[] data = csvData.split(",");
+        if (data.length < 6) {
+            throw new IllegalArgumentException("Expected 6 fields but found " + data.length);
+        }
+
+        return new Boat(
+                Boat.BoatType.valueOf(data[0].trim().toUpperCase()),
+                data[1],
+                Integer.parseInt(data[2].trim()),
+                data[3],
+                Integer.parseInt(data[4].trim()),
+                Double.parseDouble(data[5].trim())
+        );
+
+    } // end of the parseBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Stops the background saves, saves the fleet one last time and closes the journal before the
+     * program exits.
+     * @param fleet The fleet object to be saved
+     */
+    private static void closeFleetData(Fleet fleet) {
+
+        saveService(fleet).close();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Error closing the journal file.");
+        }
+
+    } // end of the closeFleetData method
+    //----------------------------------------------------------------------------------------------------
 } // end of the FleetManagement class
 //========================================================================================================
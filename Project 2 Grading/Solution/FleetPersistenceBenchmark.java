@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+//========================================================================================================
+/**
+ * Measures how long it takes to save and load fleets of various sizes through each FleetRepository,
+ * how many bytes each format takes on disk, and how much memory is allocated along the way. Java
+ * serialization (the original database format) is compared against CSV, the binary fleet format and
+ * the sharded format, which is also saved after a change to a single boat. Syncing the fleet with its
+ * CSV export is timed too. Fleets are generated with the same boats as FleetBenchmark, in a temporary
+ * directory that is deleted afterwards. For each load, the heap the loaded fleet keeps after garbage
+ * collection is reported too, which shows how much the sharing of make/model Strings saves.
+ * <p>
+ * This program only measures: each load is checked for the number of boats alone. Whether the
+ * repositories keep a fleet exactly is checked by FleetRepositoryCheck, on small fleets.
+ * <p>
+ * Run with the fleet sizes to test as arguments, for example:
+ * <pre>
+ *     java -Xmx8g FleetPersistenceBenchmark 100000 1000000 5000000
+ * </pre>
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetPersistenceBenchmark {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The fleet sizes tested when none are given on the command line
+     */
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of untimed rounds run before measuring, to let the JIT compiler settle
+     */
+    private static final int WARMUP_ROUNDS = 2;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of timed rounds; the median is reported
+     */
+    private static final int MEASURED_ROUNDS = 3;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the buffers used for reading and writing files
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of shards the sharded format is measured with
+     */
+    private static final int SHARDS = 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of garbage collections run to measure the live heap
+     */
+    private static final int LIVE_HEAP_COLLECTIONS = 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The JVM's thread bean, used to count the bytes allocated by each thread
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The main method that runs the benchmarks for each fleet size.
+     * @param args The fleet sizes to test; the default sizes are used if there are none
+     * @throws Exception If a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Path directory = Files.createTempDirectory("fleet-benchmark");
+        try {
+            System.out.printf("%-14s %-5s %10s %12s %10s %14s %14s %12s%n",
+                    "Format", "Step", "Boats", "ms", "MB/s", "Bytes on disk", "Allocated MB", "Retained MB");
+            for (int size : sizes) {
+                benchmarkSize(size, directory);
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+    } // end of the main method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs the save and load benchmarks for every repository on fleets of one size.
+     * @param size The number of boats in the fleet
+     * @param directory The directory the files are written to
+     * @throws Exception If a benchmark fails
+     */
+    private static void benchmarkSize(int size, Path directory) throws Exception {
+
+        Fleet fleet = new Fleet();
+        for (Boat boat : FleetBenchmark.generateBoats(size, 42)) {
+            fleet.addBoat(boat);
+        }
+        // Spend on some boats, so the repositories have expenses to keep
+        FleetSnapshot generated = fleet.snapshot();
+        for (int i = 0; i < size; i += 3) {
+            generated.getBoat(i).trySpendCents(i % 100_000 + 1);
+        }
+
+        FleetShardStore shards = new FleetShardStore(directory.resolve("fleet-" + size + ".shards"), SHARDS);
+        FleetRepository[] repositories = {
+                new SerializedFleetRepository(directory.resolve("fleet-" + size + ".ser")),
+                new CsvFleetRepository(directory.resolve("fleet-" + size + ".csv")),
+                new BinaryFleetRepository(directory.resolve("fleet-" + size + ".db")),
+                shards
+        };
+        AtomicLong generation = new AtomicLong();
+
+        for (FleetRepository repository : repositories) {
+            Path file = repository.getFile();
+            run(repository.getName(), "save", size, file, () -> {
+                repository.allBoatsChanged();
+                repository.save(fleet.snapshot(), generation.incrementAndGet());
+                return null;
+            });
+            run(repository.getName(), "load", size, file, () -> {
+                Fleet loaded = new Fleet();
+                repository.load(loaded);
+                check(size, loaded);
+                return loaded;
+            });
+        }
+
+        Path binary = repositories[2].getFile();
+        run("Binary stream", "load", size, binary, () -> {
+            Fleet loaded = new Fleet();
+            try (InputStream in = Files.newInputStream(binary)) {
+                FleetCodec.readFleet(in, loaded);
+            }
+            check(size, loaded);
+            return loaded;
+        });
+
+        Path csv = repositories[1].getFile();
+        run("CSV sync", "diff", size, csv, () -> {
+            Fleet manifest = new Fleet();
+            new FleetCsvLoader().load(csv.toString(), manifest);
+            return FleetDiff.compare(fleet, manifest);
+        });
+
+        Boat changed = fleet.snapshot().getBoat(size / 2);
+        run("Sharded 1/" + SHARDS, "save", size, shards.getFile(), () -> {
+            changed.addExpenseCents(1);
+            shards.boatChanged(changed.getName());
+            shards.save(fleet.snapshot(), generation.incrementAndGet());
+            return null;
+        });
+
+    } // end of the benchmarkSize method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that a loaded fleet holds every boat, so a broken format cannot report a fast time.
+     * @param size The expected number of boats
+     * @param fleet The loaded fleet
+     */
+    private static void check(int size, Fleet fleet) {
+
+        if (fleet.getBoats().size() != size) {
+            throw new IllegalStateException("Loaded " + fleet.getBoats().size() + " boats, expected " + size);
+        }
+
+    } // end of the check method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs one step for the warm-up rounds and then the measured rounds, and prints the median time,
+     * throughput, allocation and retained heap along with the size of the file.
+     * @param format The name of the file format
+     * @param step The name of the step, save or load
+     * @param size The number of boats in the fleet
+     * @param file The file the step writes or reads; files named after it with a suffix count too
+     * @param work The step to measure
+     * @throws Exception If the step fails
+     */
+    private static void run(String format, String step, int size, Path file, Step work) throws Exception {
+
+        List<Long> times = new ArrayList<>();
+        List<Long> allocations = new ArrayList<>();
+        List<Long> retained = new ArrayList<>();
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long[] measured = measureRound(work);
+            if (round >= WARMUP_ROUNDS) {
+                times.add(measured[0]);
+                allocations.add(measured[1]);
+                retained.add(measured[2]);
+            }
+        }
+        times.sort(null);
+        allocations.sort(null);
+        retained.sort(null);
+
+        long nanos = times.get(times.size() / 2);
+        long bytes = bytesOnDisk(file);
+        System.out.printf("%-14s %-5s %10d %12.1f %10.1f %14d %14.1f %12.1f%n", format, step, size,
+                nanos / 1e6, bytes / 1e6 / (nanos / 1e9), bytes,
+                allocations.get(allocations.size() / 2) / 1e6, retained.get(retained.size() / 2) / 1e6);
+
+    } // end of the run method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs a step once and measures it. What the step produced is held only by this method, so it can
+     * be collected before the next round measures the heap.
+     * @param work The step to measure
+     * @return The time in nanoseconds, the bytes allocated and the bytes of heap the result retains
+     * @throws Exception If the step fails
+     */
+    private static long[] measureRound(Step work) throws Exception {
+
+        long heapBefore = liveHeap();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        Object result = work.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long kept = liveHeap() - heapBefore;
+        Reference.reachabilityFence(result);
+
+        return new long[] {elapsed, allocated, Math.max(kept, 0)};
+
+    } // end of the measureRound method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the size of a file together with the files named after it with a suffix, such as the
+     * shard files next to a shard manifest.
+     * @param file The file
+     * @return The total size in bytes
+     * @throws IOException If a size cannot be read
+     */
+    private static long bytesOnDisk(Path file) throws IOException {
+
+        long bytes = Files.size(file);
+        try (var siblings = Files.list(file.toAbsolutePath().getParent())) {
+            for (Path sibling : (Iterable<Path>) siblings::iterator) {
+                if (sibling.getFileName().toString().startsWith(file.getFileName() + ".")) {
+                    bytes += Files.size(sibling);
+                }
+            }
+        }
+
+        return bytes;
+
+    } // end of the bytesOnDisk method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total number of bytes allocated so far by the live threads, so that work handed to
+     * pool threads (such as parallel CSV parsing) is counted too.
+     * @return The number of bytes allocated
+     */
+    private static long allocatedBytes() {
+
+        long total = 0;
+        for (long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+
+        return total;
+
+    } // end of the allocatedBytes method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Collects garbage and returns the least heap the live objects were left taking, as the heap pools
+     * reported it straight after each collection. A full collection may leave some garbage in place
+     * rather than compact the heap, and the serial collector compacts it completely only on every
+     * fourth one, so enough collections are run for one of them to have done so.
+     * @return The live heap in bytes
+     */
+    private static long liveHeap() {
+
+        long live = Long.MAX_VALUE;
+        for (int i = 0; i < LIVE_HEAP_COLLECTIONS; i++) {
+            System.gc();
+            long total = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage afterCollection = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && afterCollection != null) {
+                    total += afterCollection.getUsed();
+                }
+            }
+            live = Math.min(live, total);
+        }
+
+        return live;
+
+    } // end of the liveHeap method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * A save or load step to be timed.
+     */
+    interface Step {
+
+        /**
+         * Runs the step once.
+         * @return What the step produced, such as the loaded fleet, kept reachable while the retained
+         *         heap is measured, or null
+         * @throws Exception If the step fails
+         */
+        Object run() throws Exception;
+
+    } // end of the Step interface
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetPersistenceBenchmark class
+//========================================================================================================
@@ -0,0 +1,291 @@
+import java.io.IOException;
+//========================================================================================================
+/**
+ * Writes the fleet report, one fixed-width line per boat followed by the totals, straight to a Writer,
+ * PrintStream or any other Appendable. Lines are built with hand-written padding and number formatting
+ * in a reused buffer that is passed on in large pieces, so no String.format call or String per boat is
+ * needed, and a large fleet can be written without first building the whole report as one String.
+ * The report is written from a snapshot of the fleet, and can also be written one page at a time.
+ * <p>
+ * The layout is the one the fleet report has always used:
+ * <pre>
+ *     SAILING  Moon Glow            1973 Bristol        30' : Paid $   7000.00 : Spent $      0.00
+ * </pre>
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetReportWriter {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of characters collected before they are passed on to the output
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The first line of the report
+     */
+    private static final String HEADER = "Fleet report:\n";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The start of the totals line, padded to line up with the money columns of the boat lines
+     */
+    private static final String TOTAL = "    Total                                                 : Paid $";
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Where the report is written
+     */
+    private final Appendable out;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The characters not yet passed on to the output, or the output itself if it is a StringBuilder
+     */
+    private final StringBuilder buffer;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a report writer for the given output.
+     * @param output Where the report is written
+     */
+    public FleetReportWriter(Appendable output) {
+
+        out = output;
+        buffer = output instanceof StringBuilder ? (StringBuilder) output : new StringBuilder(BUFFER_SIZE);
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the whole report for a fleet, from a snapshot taken when the method is called.
+     * @param fleet The fleet to report on
+     * @throws IOException If the output cannot be written
+     */
+    public void writeReport(Fleet fleet) throws IOException {
+
+        writeReport(fleet.snapshot());
+
+    } // end of the writeReport method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the whole report for a snapshot of a fleet.
+     * @param snapshot The snapshot to report on
+     * @throws IOException If the output cannot be written
+     */
+    public void writeReport(FleetSnapshot snapshot) throws IOException {
+
+        writeHeader();
+        for (int i = 0; i < snapshot.size(); i++) {
+            writeBoat(snapshot.getBoat(i), snapshot.getExpensesCents(i));
+        }
+        writeTotal(snapshot.totalPurchaseCostCents(), snapshot.totalSpentCents());
+        flush();
+
+    } // end of the writeReport method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes one page of the report for a snapshot of a fleet. The first page starts with the report
+     * header and the last page ends with the totals. Writing every page of the same snapshot gives the
+     * same report as writeReport, even if the fleet changes in between.
+     * @param snapshot The snapshot to report on
+     * @param page The page to write, counting from 0
+     * @param pageSize The number of boats on each page
+     * @return The number of pages in the report
+     * @throws IOException If the output cannot be written
+     */
+    public int writePage(FleetSnapshot snapshot, int page, int pageSize) throws IOException {
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1");
+        }
+
+        int pageCount = Math.max(1, (snapshot.size() + pageSize - 1) / pageSize);
+        long first = (long) page * pageSize;
+        long last = Math.min(first + pageSize, snapshot.size());
+
+        if (page == 0) {
+            writeHeader();
+        }
+        for (long i = Math.max(first, 0); i < last; i++) {
+            writeBoat(snapshot.getBoat((int) i), snapshot.getExpensesCents((int) i));
+        }
+        if (page == pageCount - 1) {
+            writeTotal(snapshot.totalPurchaseCostCents(), snapshot.totalSpentCents());
+        }
+        flush();
+
+        return pageCount;
+
+    } // end of the writePage method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the first line of the report.
+     * @throws IOException If the output cannot be written
+     */
+    public void writeHeader() throws IOException {
+
+        buffer.append(HEADER);
+        flushIfFull();
+
+    } // end of the writeHeader method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the report line of one boat.
+     * @param boat The boat to write
+     * @throws IOException If the output cannot be written
+     */
+    public void writeBoat(Boat boat) throws IOException {
+
+        writeBoat(boat, boat.getExpensesCents());
+
+    } // end of the writeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the report line of one boat with the expenses it had when a snapshot was taken.
+     * @param boat The boat to write
+     * @param expensesCents The expenses to show for the boat, in cents
+     * @throws IOException If the output cannot be written
+     */
+    public void writeBoat(Boat boat, long expensesCents) throws IOException {
+
+        appendBoat(buffer.append("    "), boat, expensesCents).append('\n');
+        flushIfFull();
+
+    } // end of the writeBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the totals line that ends the report.
+     * @param purchaseCostCents The total purchase cost of the fleet, in cents
+     * @param spentCents The total expenses of the fleet, in cents
+     * @throws IOException If the output cannot be written
+     */
+    public void writeTotal(long purchaseCostCents, long spentCents) throws IOException {
+
+        buffer.append(TOTAL);
+        appendMoney(buffer, purchaseCostCents);
+        appendMoney(buffer.append(" : Spent $"), spentCents).append('\n');
+        flushIfFull();
+
+    } // end of the writeTotal method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Passes everything written so far on to the output.
+     * @throws IOException If the output cannot be written
+     */
+    public void flush() throws IOException {
+
+        if (buffer != out && buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+
+    } // end of the flush method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Passes the buffer on to the output once it holds enough characters.
+     * @throws IOException If the output cannot be written
+     */
+    private void flushIfFull() throws IOException {
+
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+
+    } // end of the flushIfFull method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends the report line of a boat, without indentation or line break.
+     * @param sb The builder the line is appended to
+     * @param boat The boat to describe
+     * @param expensesCents The expenses to show for the boat, in cents
+     * @return The builder
+     */
+    static StringBuilder appendBoat(StringBuilder sb, Boat boat, long expensesCents) {
+
+        appendLeft(sb, String.valueOf(boat.getType()), 8).append(' ');
+        appendLeft(sb, boat.getName(), 20).append(' ');
+        appendRight(sb, boat.getYearOfManufacture(), 4).append(' ');
+        appendLeft(sb, boat.getMakeModel(), 12).append(' ');
+        appendRight(sb, boat.getLengthInFeet(), 4).append("' : Paid $");
+        appendMoney(sb, boat.getPurchasePriceCents()).append(" : Spent $");
+
+        return appendMoney(sb, expensesCents);
+
+    } // end of the appendBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends a String padded on the right with spaces to at least the given width, like "%-20s".
+     * @param sb The builder the String is appended to
+     * @param value The String to append
+     * @param width The smallest number of characters to append
+     * @return The builder
+     */
+    private static StringBuilder appendLeft(StringBuilder sb, String value, int width) {
+
+        String text = String.valueOf(value);
+        sb.append(text);
+        for (int i = text.length(); i < width; i++) {
+            sb.append(' ');
+        }
+
+        return sb;
+
+    } // end of the appendLeft method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends a whole number padded on the left with spaces to at least the given width, like "%4d".
+     * @param sb The builder the number is appended to
+     * @param value The number to append
+     * @param width The smallest number of characters to append
+     * @return The builder
+     */
+    private static StringBuilder appendRight(StringBuilder sb, long value, int width) {
+
+        for (int i = (value < 0 ? 1 : 0) + digitCount(Math.abs(value)); i < width; i++) {
+            sb.append(' ');
+        }
+
+        return sb.append(value);
+
+    } // end of the appendRight method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Appends an amount of money in dollars with two decimals, padded on the left with spaces to at
+     * least 10 characters, like "%10.2f" of the amount in dollars.
+     * @param sb The builder the amount is appended to
+     * @param cents The amount, in cents
+     * @return The builder
+     */
+    static StringBuilder appendMoney(StringBuilder sb, long cents) {
+
+        long dollars = Math.abs(cents / 100);
+        int remainder = (int) Math.abs(cents % 100);
+        boolean negative = cents < 0;
+
+        for (int i = (negative ? 1 : 0) + digitCount(dollars) + 3; i < 10; i++) {
+            sb.append(' ');
+        }
+        if (negative) {
+            sb.append('-');
+        }
+
+        return sb.append(dollars).append('.').append((char) ('0' + remainder / 10))
+                .append((char) ('0' + remainder % 10));
+
+    } // end of the appendMoney method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Counts the decimal digits of a number that is not negative.
+     * @param value The number
+     * @return The number of digits, at least 1
+     */
+    private static int digitCount(long value) {
+
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
+
+    } // end of the digitCount method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetReportWriter class
+//========================================================================================================
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+//========================================================================================================
+/**
+ * Where a fleet is saved between runs of the program. Each implementation keeps the fleet in its own
+ * file format, together with the generation of the journal that records the changes made after the
+ * fleet was saved, and the program picks one when it starts.
+ * <p>
+ * Saves are made from a snapshot of the fleet, on the save service's thread, and never overlap. A
+ * save that fails must leave what was saved before intact.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public interface FleetRepository {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the name of the format, for messages and benchmark reports.
+     * @return The name of the format
+     */
+    String getName();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the file the fleet is saved in, or the file that names the others if there are several.
+     * @return The main file of the repository
+     */
+    Path getFile();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation of the saved fleet, without loading the fleet.
+     * @return The journal generation, 0 if the saved fleet has none, or -1 if there is no saved fleet
+     *         or it cannot be read
+     */
+    long readGeneration();
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the highest journal generation any file of the repository holds or is named after,
+     * including files a damaged save left behind, so a fleet started afresh can be saved at a later
+     * generation without taking their names.
+     * @return The highest generation, or -1 if there are no files
+     */
+    default long readHighestGeneration() {
+
+        return readGeneration();
+
+    } // end of the readHighestGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the saved fleet. No boat is added unless the whole saved fleet could be read.
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored with the fleet, or 0 if it has none
+     * @throws IOException If the fleet cannot be read or is damaged
+     */
+    long load(Fleet fleet) throws IOException;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records that a boat was added, removed or spent on, for repositories that only rewrite what
+     * changed. Called while holding the journal's monitor, together with the change.
+     * @param name The name of the boat
+     */
+    default void boatChanged(String name) {
+
+    } // end of the boatChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Records that any boat may have changed, for example after the journal was replayed.
+     */
+    default void allBoatsChanged() {
+
+    } // end of the allBoatsChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Called while holding the journal's monitor at the moment the snapshot for the next save is
+     * taken, so a repository that tracks changes knows which of them the snapshot holds.
+     */
+    default void beginSave() {
+
+    } // end of the beginSave method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves a snapshot of the fleet, replacing what was saved before only once the new save is
+     * complete and on the disk.
+     * @param snapshot The snapshot of the fleet
+     * @param journalGeneration The generation of the journal that records changes made after the snapshot
+     * @throws IOException If the fleet cannot be saved
+     */
+    void save(FleetSnapshot snapshot, long journalGeneration) throws IOException;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the temporary file a new version of a file is written to before it replaces the file.
+     * @param file The file to be replaced
+     * @return The file name followed by ".tmp"
+     */
+    static Path temporaryFile(Path file) {
+
+        return file.resolveSibling(file.getFileName() + ".tmp");
+
+    } // end of the temporaryFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Replaces a file with one already forced to the disk in one rename, so a reader sees either the
+     * old file or the new one, then forces the directory to the disk so the rename itself survives a
+     * power loss.
+     * @param source The new file, which is renamed
+     * @param target The file it replaces
+     * @throws IOException If the file cannot be replaced
+     */
+    static void replaceFile(Path source, Path target) throws IOException {
+
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        forceDirectory(target);
+
+    } // end of the replaceFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Forces the directory holding a file to the disk, so a file just created or renamed there is
+     * still found after a power loss.
+     * @param file The file whose directory is forced
+     */
+    static void forceDirectory(Path file) {
+
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some systems cannot open or force a directory; the entry is then left to the system
+        }
+
+    } // end of the forceDirectory method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetRepository interface
+//========================================================================================================
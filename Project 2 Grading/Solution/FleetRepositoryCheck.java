@@ -0,0 +1,325 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+//========================================================================================================
+/**
+ * Checks that every FleetRepository keeps a fleet exactly, on small fleets and without timing anything,
+ * so it can be run after every build. Each repository must load back the snapshot it saved boat by
+ * boat, including expenses and amounts up to Boat.MAX_CENTS, together with the generation it was saved
+ * with; the sharded store must do so after saving only a changed shard; a fleet synced with its own
+ * CSV export must find nothing to change; and a manifest that lowers a price below a boat's expenses
+ * must leave that boat as it is. FleetManagement is then run in a separate process for every
+ * pair of stores, to check that a fleet imported from CSV into one store is the one loaded at the next
+ * start, even when another store had been saved more times before the import.
+ * <p>
+ * Run it from the directory holding the compiled classes:
+ * <pre>
+ *     java FleetRepositoryCheck
+ * </pre>
+ * A failed check stops the run with an IllegalStateException that says what was wrong, so the program
+ * exits with a non-zero status.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetRepositoryCheck {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of boats in the fleets the repositories are checked with
+     */
+    private static final int FLEET_SIZE = 1_000;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of shards the sharded store is checked with
+     */
+    private static final int SHARDS = 4;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The command line options that choose each store of FleetManagement
+     */
+    private static final String[][] STORE_OPTIONS = {
+            {}, {"-shards", "4"}, {"-store", "serialized"}, {"-store", "csv"}
+    };
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The main method that runs every check in a temporary directory, deleted afterwards.
+     * @param args Not used
+     * @throws Exception If a check fails or its files cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+
+        Path directory = Files.createTempDirectory("fleet-check");
+        try {
+            checkRoundTrips(directory);
+            System.out.println("Passed: every repository loads back what it saved.");
+            checkCsvSync(directory);
+            System.out.println("Passed: a fleet synced with its own CSV export is unchanged.");
+            checkLoweredPrice();
+            System.out.println("Passed: a price lowered below a boat's expenses is rejected.");
+            checkImport(directory);
+            System.out.println("Passed: a CSV import is loaded at the next start from any store.");
+        } finally {
+            deleteFiles(directory);
+            Files.delete(directory);
+        }
+
+    } // end of the main method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves a fleet through each repository and checks that it loads back exactly, then changes one
+     * boat and checks the sharded store again after it saves only that boat's shard.
+     * @param directory The directory the files are written to
+     * @throws IOException If a file cannot be written or read
+     */
+    private static void checkRoundTrips(Path directory) throws IOException {
+
+        Fleet fleet = generateFleet();
+        FleetShardStore shards = new FleetShardStore(directory.resolve("fleet.shards"), SHARDS);
+        FleetRepository[] repositories = {
+                new SerializedFleetRepository(directory.resolve("fleet.ser")),
+                new CsvFleetRepository(directory.resolve("fleet.csv")),
+                new BinaryFleetRepository(directory.resolve("fleet.db")),
+                shards
+        };
+
+        long generation = 0;
+        for (FleetRepository repository : repositories) {
+            generation++;
+            repository.allBoatsChanged();
+            repository.save(fleet.snapshot(), generation);
+            conform(repository, fleet.snapshot(), generation);
+        }
+
+        Boat changed = fleet.snapshot().getBoat(FLEET_SIZE / 2);
+        changed.addExpenseCents(1);
+        shards.boatChanged(changed.getName());
+        generation++;
+        shards.save(fleet.snapshot(), generation);
+        conform(new FleetShardStore(shards.getFile(), SHARDS), fleet.snapshot(), generation);
+
+    } // end of the checkRoundTrips method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that a fleet synced with its own CSV export finds every boat unchanged.
+     * @param directory The directory the export is written to
+     * @throws IOException If the export cannot be written or read
+     */
+    private static void checkCsvSync(Path directory) throws IOException {
+
+        Fleet fleet = generateFleet();
+        CsvFleetRepository export = new CsvFleetRepository(directory.resolve("export.csv"));
+        export.save(fleet.snapshot(), 1);
+
+        Fleet manifest = new Fleet();
+        new FleetCsvLoader().load(export.getFile().toString(), manifest);
+        FleetDiff diff = FleetDiff.compare(fleet, manifest);
+        if (diff.getUnchangedCount() != fleet.snapshot().size()) {
+            throw new IllegalStateException("Synced with its own export: " + diff);
+        }
+
+    } // end of the checkCsvSync method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that a manifest lowering a boat's price below its expenses leaves that boat as it is,
+     * while a price lowered to exactly its expenses is still applied.
+     */
+    private static void checkLoweredPrice() {
+
+        Fleet fleet = new Fleet();
+        fleet.addBoat(Boat.withCents(Boat.BoatType.SAILING, "Sunk Cost", 1990, "Catalina", 30, 1_000_000,
+                600_000));
+        fleet.addBoat(Boat.withCents(Boat.BoatType.POWER, "Even Keel", 2000, "Bayliner", 20, 500_000,
+                300_000));
+
+        Fleet manifest = new Fleet();
+        manifest.addBoat(Boat.withCents(Boat.BoatType.SAILING, "Sunk Cost", 1990, "Catalina", 30, 599_999,
+                0));
+        manifest.addBoat(Boat.withCents(Boat.BoatType.POWER, "Even Keel", 2000, "Bayliner", 20, 300_000,
+                0));
+        FleetDiff diff = FleetDiff.compare(fleet, manifest);
+
+        if (!diff.getRejected().equals(List.of("Sunk Cost")) || diff.getChanged().size() != 1
+                || diff.getChanged().get(0).getPurchasePriceCents() != 300_000
+                || diff.getChanged().get(0).getExpensesCents() != 300_000 || !diff.getAdded().isEmpty()
+                || !diff.getRemoved().isEmpty()) {
+            throw new IllegalStateException("Lowered the prices below and to the expenses: " + diff);
+        }
+
+    } // end of the checkLoweredPrice method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Creates the fleet the repositories are checked with: the boats FleetBenchmark generates, with
+     * expenses on some of them, and one boat whose price and expenses are as large as a boat allows.
+     * @return The fleet
+     */
+    private static Fleet generateFleet() {
+
+        Fleet fleet = new Fleet();
+        for (Boat boat : FleetBenchmark.generateBoats(FLEET_SIZE - 1, 42)) {
+            fleet.addBoat(boat);
+        }
+        fleet.addBoat(Boat.withCents(Boat.BoatType.POWER, "Top Dollar", 2024, "Riva", 90, Boat.MAX_CENTS,
+                Boat.MAX_CENTS - 1));
+
+        FleetSnapshot generated = fleet.snapshot();
+        for (int i = 0; i < FLEET_SIZE - 1; i += 3) {
+            generated.getBoat(i).trySpendCents(i % 100_000 + 1);
+        }
+
+        return fleet;
+
+    } // end of the generateFleet method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that a repository loads back exactly the snapshot it last saved: the same boats, found by
+     * name, with the same fields and expenses, and the generation it was saved with.
+     * @param repository The repository to check
+     * @param saved The snapshot the repository last saved
+     * @param generation The journal generation it was saved with
+     * @throws IOException If the repository cannot be loaded
+     */
+    private static void conform(FleetRepository repository, FleetSnapshot saved, long generation)
+            throws IOException {
+
+        Fleet loaded = new Fleet();
+        long loadedGeneration = repository.load(loaded);
+        String name = repository.getName();
+        if (loadedGeneration != generation || repository.readGeneration() != generation) {
+            throw new IllegalStateException(name + " gave generation " + loadedGeneration + " and "
+                    + repository.readGeneration() + ", expected " + generation);
+        }
+        if (loaded.getBoats().size() != saved.size()) {
+            throw new IllegalStateException(name + " loaded " + loaded.getBoats().size() + " boats, expected "
+                    + saved.size());
+        }
+
+        for (int i = 0; i < saved.size(); i++) {
+            Boat expected = saved.getBoat(i);
+            Boat actual = loaded.getBoatByName(expected.getName());
+            if (actual == null || actual.getType() != expected.getType()
+                    || !actual.getName().equals(expected.getName())
+                    || actual.getYearOfManufacture() != expected.getYearOfManufacture()
+                    || !actual.getMakeModel().equals(expected.getMakeModel())
+                    || actual.getLengthInFeet() != expected.getLengthInFeet()
+                    || actual.getPurchasePriceCents() != expected.getPurchasePriceCents()
+                    || actual.getExpensesCents() != saved.getExpensesCents(i)) {
+                throw new IllegalStateException(name + " loaded " + actual + ", expected " + expected);
+            }
+        }
+
+    } // end of the conform method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Checks that a fleet imported from CSV is loaded at the next start, for every pair of stores. The
+     * old fleet is saved twice in one store, with an expense recorded in between, so that store has
+     * the higher generation of the two before the new fleet is imported into the other. The program is
+     * then started with the old store chosen, and must print the new fleet and nothing of the old one.
+     * @param directory The directory the program is run in
+     * @throws Exception If the program cannot be run or loads the wrong fleet
+     */
+    private static void checkImport(Path directory) throws Exception {
+
+        Path oldFleet = directory.resolve("old-fleet.csv");
+        Path newFleet = directory.resolve("new-fleet.csv");
+        Path spend = directory.resolve("spend.txt");
+        Path print = directory.resolve("print.txt");
+        Files.write(oldFleet, List.of("SAILING,Old Salt,1990,Catalina,30,10000",
+                "POWER,Old Timer,2000,Bayliner,20,5000"));
+        Files.write(newFleet, List.of("SAILING,New Wave,1995,Hunter,28,20000",
+                "POWER,New Moon,2010,Boston,18,8000"));
+        Files.write(spend, List.of("E,Old Salt,10"));
+        Files.write(print, List.of("P"));
+
+        for (String[] oldStore : STORE_OPTIONS) {
+            for (String[] newStore : STORE_OPTIONS) {
+                if (oldStore == newStore) {
+                    continue;
+                }
+                runFleetManagement(directory, oldStore, "-batch", spend.toString(), oldFleet.toString());
+                runFleetManagement(directory, oldStore, "-batch", spend.toString());
+                runFleetManagement(directory, newStore, "-batch", print.toString(), newFleet.toString());
+                String report = runFleetManagement(directory, oldStore, "-batch", print.toString());
+                if (!report.contains("New Wave") || !report.contains("New Moon") || report.contains("Old ")) {
+                    throw new IllegalStateException("Imported into " + storeName(newStore) + " after "
+                            + storeName(oldStore) + ", then loaded:\n" + report);
+                }
+
+                try (var files = Files.list(directory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        if (file.getFileName().toString().startsWith("FleetData")) {
+                            Files.delete(file);
+                        }
+                    }
+                }
+            }
+        }
+
+    } // end of the checkImport method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a name for the store chosen by some command line options, for messages.
+     * @param storeOptions The options that choose the store
+     * @return The options, or "the binary store" if there are none
+     */
+    private static String storeName(String[] storeOptions) {
+
+        return storeOptions.length == 0 ? "the binary store" : String.join(" ", storeOptions);
+
+    } // end of the storeName method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs FleetManagement in a separate process, so each run starts from the files alone.
+     * @param directory The directory the program is run in
+     * @param storeOptions The options that choose the store
+     * @param args The other command line arguments
+     * @return What the program printed
+     * @throws Exception If the program cannot be run or fails
+     */
+    private static String runFleetManagement(Path directory, String[] storeOptions, String... args)
+            throws Exception {
+
+        // The class path may be relative to this program's directory
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(Paths.get(entry).toAbsolutePath().toString());
+        }
+
+        // A small heap and the client compiler keep each short run quick to start
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-XX:TieredStopAtLevel=1", "-Xmx64m",
+                "-cp", String.join(File.pathSeparator, classPath), "FleetManagement"));
+        command.addAll(Arrays.asList(storeOptions));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(directory.toFile())
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " failed:\n" + output);
+        }
+
+        return output;
+
+    } // end of the runFleetManagement method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Deletes the files in a directory.
+     * @param directory The directory
+     * @throws IOException If a file cannot be deleted
+     */
+    private static void deleteFiles(Path directory) throws IOException {
+
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+    } // end of the deleteFiles method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetRepositoryCheck class
+//========================================================================================================
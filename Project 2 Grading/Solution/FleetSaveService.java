@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+//========================================================================================================
+/**
+ * Saves the fleet to its repository on a background thread, so the menu does not wait for the disk.
+ * Save requests made close together are combined: the first request schedules a save after a short
+ * delay, and every request made before that save starts is served by it. The repository replaces what
+ * it saved before only once the new save is on the disk, so a crash or power loss at any point leaves
+ * either the old save or the new one, never a partly written one.
+ * <p>
+ * Each save takes a snapshot of the fleet and rotates the journal at the same moment, while holding
+ * the journal's monitor. Changes to the fleet must be made and journaled while holding the same
+ * monitor, so every change is either in the snapshot or in the new journal, never both or neither.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetSaveService {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The fleet being saved
+     */
+    private final Fleet fleet;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Where the fleet is saved
+     */
+    private final FleetRepository repository;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The journal of the changes made since the last snapshot
+     */
+    private final FleetJournal journal;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * How long a save waits after the first request, in milliseconds, so later requests can join it
+     */
+    private final long delayMillis;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The background thread that runs the saves
+     */
+    private final ScheduledThreadPoolExecutor executor;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Held while a save runs, so saves never overlap. Separate from this object's monitor, so that
+     * requesting a save never waits for one that is running.
+     */
+    private final Object saveLock;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of save requests waiting to be served by the next save
+     */
+    private final AtomicInteger pendingRequests;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Whether a background save is scheduled and has not started yet. Guarded by this object.
+     */
+    private boolean scheduled;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Whether the service has been closed. Guarded by this object.
+     */
+    private boolean closed;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * How long the last successful save took, in nanoseconds, or -1 before the first one
+     */
+    private volatile long lastSaveNanos;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a save service for a fleet kept in a repository.
+     * @param fleetToSave The fleet to save
+     * @param fleetRepository Where the fleet is saved
+     * @param fleetJournal The journal of the changes made since the last snapshot
+     * @param delay How long a save waits after the first request, in milliseconds
+     */
+    public FleetSaveService(Fleet fleetToSave, FleetRepository fleetRepository, FleetJournal fleetJournal,
+                            long delay) {
+
+        fleet = fleetToSave;
+        repository = fleetRepository;
+        journal = fleetJournal;
+        delayMillis = delay;
+        executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "fleet-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Closing cancels a save still waiting out its delay, since close saves straight away
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        saveLock = new Object();
+        pendingRequests = new AtomicInteger();
+        scheduled = false;
+        closed = false;
+        lastSaveNanos = -1;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Asks for the fleet to be saved in the background. Returns at once; the save starts after the
+     * delay, together with any other requests made in the meantime.
+     */
+    public void requestSave() {
+
+        pendingRequests.incrementAndGet();
+
+        synchronized (this) {
+            if (!scheduled && !closed) {
+                scheduled = true;
+                executor.schedule(this::runScheduledSave, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+    } // end of the requestSave method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Runs a save that was scheduled by requestSave.
+     */
+    private void runScheduledSave() {
+
+        synchronized (this) {
+            scheduled = false;
+        }
+        save();
+
+    } // end of the runScheduledSave method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves the fleet now, on the calling thread. Saves never overlap.
+     * @return True if the fleet was saved, false if the save failed
+     */
+    public boolean save() {
+
+        synchronized (saveLock) {
+            return saveSnapshot();
+        }
+
+    } // end of the save method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Takes a snapshot of the fleet, rotating the journal at the same moment, and saves it to the
+     * repository. Called while holding the save lock.
+     * @return True if the fleet was saved, false if the save failed
+     */
+    private boolean saveSnapshot() {
+
+        long start = System.nanoTime();
+        pendingRequests.set(0);
+
+        FleetSnapshot snapshot;
+        long generation;
+        try {
+            synchronized (journal) {
+                snapshot = fleet.snapshot();
+                generation = journal.rotate();
+                repository.beginSave();
+            }
+        } catch (IOException e) {
+            System.out.println("Error rotating the journal file.");
+            return false;
+        }
+
+        try {
+            repository.save(snapshot, generation);
+        } catch (IOException e) {
+            System.out.println("Error saving database file.");
+            return false;
+        }
+
+        try {
+            journal.discardPrevious(generation);
+        } catch (IOException e) {
+            System.out.println("Error deleting the previous journal files.");
+        }
+
+        lastSaveNanos = System.nanoTime() - start;
+        return true;
+
+    } // end of the saveSnapshot method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Stops the background thread and saves the fleet one last time. Called when the program exits,
+     * either from the menu or from a shutdown hook; calls after the first do nothing.
+     * @return True if the final save succeeded or the service was already closed
+     */
+    public boolean close() {
+
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            closed = true;
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return save();
+
+    } // end of the close method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns how long the last successful save took.
+     * @return The time taken in milliseconds, or -1 if nothing has been saved yet
+     */
+    public double getLastSaveMillis() {
+
+        long nanos = lastSaveNanos;
+
+        return nanos < 0 ? -1 : nanos / 1e6;
+
+    } // end of the getLastSaveMillis method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of save requests waiting for the next save.
+     * @return The number of waiting requests
+     */
+    public int getQueueDepth() {
+
+        return pendingRequests.get();
+
+    } // end of the getQueueDepth method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetSaveService class
+//========================================================================================================
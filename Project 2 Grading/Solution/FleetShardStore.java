@@ -0,0 +1,512 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+//========================================================================================================
+/**
+ * Stores a fleet split across a number of shard files instead of one database file, so a save only
+ * rewrites the shards whose boats changed and a load reads the shards in parallel. Each boat belongs
+ * to the shard picked by a hash of its lower-cased name. Every shard file is a fleet database in the
+ * FleetCodec format, named after the manifest, the shard number and the journal generation it was
+ * saved at, for example "FleetData.shards.3.42".
+ * <p>
+ * A small manifest file names the current file of every shard together with the journal generation
+ * that continues from them:
+ * <pre>
+ *     int    magic number ("FSHD")
+ *     short  format version
+ *     int    number of shards
+ *     long   generation of the journal that continues from this manifest
+ *     long   the generation in the file name of each shard
+ *     int    CRC-32 of everything before it
+ * </pre>
+ * A save writes the changed shards to new files, then replaces the manifest in one rename, and only
+ * then deletes the shard files the old manifest named. A crash at any point leaves a manifest whose
+ * shard files all exist and match its journal generation.
+ * <p>
+ * Shards are marked as changed by the code that changes the fleet, while holding the journal's
+ * monitor, so the set of changed shards can be taken together with the snapshot when the save
+ * begins.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetShardStore implements FleetRepository {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The magic number at the start of every manifest ("FSHD")
+     */
+    private static final int MAGIC = 0x46534844;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The version of the manifest format written by this class
+     */
+    private static final short VERSION = 1;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The largest number of shards accepted
+     */
+    public static final int MAX_SHARDS = 4096;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The manifest file
+     */
+    private final Path manifest;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of shards the fleet is saved in
+     */
+    private final int shardCount;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The generation in the file name of each shard named by the saved manifest, or null until the
+     * manifest is loaded or first saved. Only used by the thread that saves.
+     */
+    private long[] savedGenerations;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Whether each shard has changed since it was last saved. Guarded by this object.
+     */
+    private final boolean[] dirty;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The shards changed before the snapshot of the save in progress was taken, or null if no save
+     * has begun. Guarded by this object.
+     */
+    private boolean[] savingShards;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a store for the given manifest file. Nothing is read until the fleet is
+     * loaded; until then every shard counts as changed.
+     * @param manifestFile The manifest file; the shard files are kept next to it
+     * @param shards The number of shards to save the fleet in
+     */
+    public FleetShardStore(Path manifestFile, int shards) {
+
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("The number of shards must be between 1 and " + MAX_SHARDS);
+        }
+
+        manifest = manifestFile;
+        shardCount = shards;
+        savedGenerations = null;
+        dirty = new boolean[shards];
+        Arrays.fill(dirty, true);
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the name of the format.
+     * @return "Sharded"
+     */
+    @Override
+    public String getName() {
+
+        return "Sharded";
+
+    } // end of the getName method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the manifest file, which names the shard files.
+     * @return The manifest file
+     */
+    @Override
+    public Path getFile() {
+
+        return manifest;
+
+    } // end of the getFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of shards the fleet is saved in.
+     * @return The number of shards
+     */
+    public int getShardCount() {
+
+        return shardCount;
+
+    } // end of the getShardCount method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the shard a boat belongs to.
+     * @param name The name of the boat
+     * @return The shard number, from 0 to one less than the number of shards
+     */
+    public int shardOf(String name) {
+
+        return Math.floorMod(String.valueOf(name).toLowerCase(Locale.ROOT).hashCode(), shardCount);
+
+    } // end of the shardOf method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Marks the shard of a boat as changed, so the next save rewrites it.
+     * @param name The name of the boat that was added, removed or spent on
+     */
+    @Override
+    public synchronized void boatChanged(String name) {
+
+        dirty[shardOf(name)] = true;
+
+    } // end of the boatChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Marks every shard as changed, for changes whose boats are not known, such as a replayed journal.
+     */
+    @Override
+    public synchronized void allBoatsChanged() {
+
+        Arrays.fill(dirty, true);
+
+    } // end of the allBoatsChanged method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Takes the shards changed so far as the ones the next save writes, since the snapshot it saves
+     * is taken at the same moment.
+     */
+    @Override
+    public synchronized void beginSave() {
+
+        savingShards = takeDirty();
+
+    } // end of the beginSave method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the shards changed since the last call and marks them all as saved.
+     * @return Whether each shard has changed
+     */
+    private synchronized boolean[] takeDirty() {
+
+        boolean[] taken = dirty.clone();
+        Arrays.fill(dirty, false);
+
+        return taken;
+
+    } // end of the takeDirty method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Marks shards as changed again after a save of them failed.
+     * @param shards Whether each shard has to be saved again
+     */
+    private synchronized void restoreDirty(boolean[] shards) {
+
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] |= shards[i];
+        }
+
+    } // end of the restoreDirty method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation stored in the manifest, without reading the shards.
+     * @return The journal generation, or -1 if the manifest is missing or damaged
+     */
+    @Override
+    public long readGeneration() {
+
+        try {
+            return readManifest().generation;
+        } catch (IOException e) {
+            return -1;
+        }
+
+    } // end of the readGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the highest generation of the manifest and of every shard file next to it, including
+     * shard files no readable manifest names any more.
+     * @return The highest generation, or -1 if there are no files
+     */
+    @Override
+    public long readHighestGeneration() {
+
+        long highest = readGeneration();
+
+        String prefix = manifest.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(manifest.toAbsolutePath().getParent(),
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            for (Path shardFile : files) {
+                String name = shardFile.getFileName().toString();
+                try {
+                    highest = Math.max(highest, Long.parseLong(name.substring(name.lastIndexOf('.') + 1)));
+                } catch (NumberFormatException e) {
+                    // Not a shard file
+                }
+            }
+        } catch (IOException e) {
+            // Without the shard files, the manifest's generation is the best known
+        }
+
+        return highest;
+
+    } // end of the readHighestGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the fleet from the shards named in the manifest, reading them in parallel. The boats are
+     * only added once every shard has been read. If the manifest was saved with a different number of
+     * shards, every shard counts as changed so the next save spreads the boats over the new number.
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the manifest
+     * @throws IOException If the manifest or a shard cannot be read or is damaged
+     */
+    @Override
+    public long load(Fleet fleet) throws IOException {
+
+        Manifest saved = readManifest();
+
+        List<List<Boat>> shards;
+        try {
+            shards = IntStream.range(0, saved.shardGenerations.length).parallel()
+                    .mapToObj(i -> readShard(i, saved.shardGenerations[i]))
+                    .collect(ArrayList::new, List::add, List::addAll);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<Boat> boats = new ArrayList<>();
+        for (List<Boat> shard : shards) {
+            boats.addAll(shard);
+        }
+        fleet.addSavedBoats(boats);
+
+        savedGenerations = saved.shardGenerations;
+        synchronized (this) {
+            Arrays.fill(dirty, saved.shardGenerations.length != shardCount);
+        }
+
+        return saved.generation;
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the boats of one shard.
+     * @param shard The shard number
+     * @param generation The generation in the shard's file name
+     * @return The boats of the shard
+     * @throws UncheckedIOException If the shard cannot be read or is damaged
+     */
+    private List<Boat> readShard(int shard, long generation) {
+
+        List<Boat> boats = new ArrayList<>();
+        try {
+            // Shards are saved in the binary format, whose boats are never renamed on reading
+            FleetCodec.readBoats(shardFile(shard, generation), boats, new ArrayList<>());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return boats;
+
+    } // end of the readShard method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves the shards changed before the save began, or all shards changed so far if no save began,
+     * and marks them as changed again if the save fails.
+     * @param snapshot The snapshot of the fleet
+     * @param generation The generation of the journal that records changes made after the snapshot
+     * @throws IOException If a shard or the manifest cannot be written; the old manifest then still
+     *                     stands
+     */
+    @Override
+    public void save(FleetSnapshot snapshot, long generation) throws IOException {
+
+        boolean[] dirtyShards;
+        synchronized (this) {
+            dirtyShards = savingShards != null ? savingShards : takeDirty();
+            savingShards = null;
+        }
+
+        try {
+            saveShards(snapshot, generation, dirtyShards);
+        } catch (IOException | RuntimeException e) {
+            restoreDirty(dirtyShards);
+            throw e;
+        }
+
+    } // end of the save method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Saves the changed shards of a snapshot and then the manifest, and deletes the shard files the
+     * manifest no longer names. Shards that have not changed keep their files.
+     * @param snapshot The snapshot of the fleet
+     * @param generation The generation of the journal that records changes made after the snapshot
+     * @param dirtyShards Whether each shard has changed since it was last saved
+     * @throws IOException If a shard or the manifest cannot be written
+     */
+    private void saveShards(FleetSnapshot snapshot, long generation, boolean[] dirtyShards)
+            throws IOException {
+
+        if (savedGenerations == null) {
+            // The fleet was not loaded from the shards, but the shards of an older save may still exist
+            try {
+                savedGenerations = readManifest().shardGenerations;
+            } catch (IOException e) {
+                savedGenerations = new long[0];
+            }
+        }
+
+        long[] shardGenerations = Arrays.copyOf(savedGenerations, shardCount);
+        if (savedGenerations.length != shardCount) {
+            Arrays.fill(shardGenerations, -1);
+        }
+
+        // Group the positions of the boats of each changed shard, keeping the order of the fleet
+        int[] shardOfBoat = new int[snapshot.size()];
+        int[] boatCounts = new int[shardCount];
+        for (int i = 0; i < snapshot.size(); i++) {
+            shardOfBoat[i] = shardOf(snapshot.getBoat(i).getName());
+            boatCounts[shardOfBoat[i]]++;
+        }
+        int[][] positions = new int[shardCount][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (dirtyShards[shard] || shardGenerations[shard] < 0) {
+                positions[shard] = new int[boatCounts[shard]];
+                boatCounts[shard] = 0;
+            }
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            int shard = shardOfBoat[i];
+            if (positions[shard] != null) {
+                positions[shard][boatCounts[shard]++] = i;
+            }
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (positions[shard] != null) {
+                FleetCodec.writeFleet(snapshot.subset(positions[shard], positions[shard].length),
+                        shardFile(shard, generation), generation);
+                shardGenerations[shard] = generation;
+            }
+        }
+
+        writeManifest(new Manifest(generation, shardGenerations));
+
+        for (int shard = 0; shard < savedGenerations.length; shard++) {
+            if (shard >= shardCount || shardGenerations[shard] != savedGenerations[shard]) {
+                Files.deleteIfExists(shardFile(shard, savedGenerations[shard]));
+            }
+        }
+        savedGenerations = shardGenerations;
+
+    } // end of the saveShards method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads and checks the manifest.
+     * @return The manifest
+     * @throws IOException If the manifest cannot be read or is damaged
+     */
+    private Manifest readManifest() throws IOException {
+
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(manifest)), new CRC32());
+
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a fleet shard manifest");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported fleet shard manifest version " + version);
+            }
+            int shards = in.readInt();
+            if (shards < 1 || shards > MAX_SHARDS) {
+                throw new StreamCorruptedException("Invalid number of shards " + shards);
+            }
+            long generation = in.readLong();
+            long[] shardGenerations = new long[shards];
+            for (int i = 0; i < shards; i++) {
+                shardGenerations[i] = in.readLong();
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                throw new StreamCorruptedException("Fleet shard manifest checksum mismatch");
+            }
+
+            return new Manifest(generation, shardGenerations);
+        }
+
+    } // end of the readManifest method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Writes the manifest to a temporary file, forces it to the disk and renames it over the old one.
+     * @param saved The manifest to write
+     * @throws IOException If the manifest cannot be written
+     */
+    private void writeManifest(Manifest saved) throws IOException {
+
+        Path temporaryFile = FleetRepository.temporaryFile(manifest);
+
+        try (FileOutputStream file = new FileOutputStream(temporaryFile.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file),
+                    new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(saved.shardGenerations.length);
+            out.writeLong(saved.generation);
+            for (long shardGeneration : saved.shardGenerations) {
+                out.writeLong(shardGeneration);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+
+        FleetRepository.replaceFile(temporaryFile, manifest);
+
+    } // end of the writeManifest method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the file a shard is saved in.
+     * @param shard The shard number
+     * @param generation The journal generation the shard was saved at
+     * @return The manifest file name followed by the shard number and generation
+     */
+    private Path shardFile(int shard, long generation) {
+
+        return manifest.resolveSibling(manifest.getFileName() + "." + shard + "." + generation);
+
+    } // end of the shardFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The contents of a manifest.
+     */
+    private static final class Manifest {
+
+        /**
+         * The generation of the journal that continues from the manifest
+         */
+        private final long generation;
+
+        /**
+         * The generation in the file name of each shard
+         */
+        private final long[] shardGenerations;
+
+        /**
+         * Constructor that creates a manifest.
+         * @param journalGeneration The generation of the journal that continues from the manifest
+         * @param generations The generation in the file name of each shard
+         */
+        Manifest(long journalGeneration, long[] generations) {
+
+            generation = journalGeneration;
+            shardGenerations = generations;
+
+        } // end of the constructor
+
+    } // end of the Manifest class
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetShardStore class
+//========================================================================================================
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+//========================================================================================================
+/**
+ * A read-only view of a fleet taken at one moment, for reports and analytics that need to walk every
+ * boat without holding up changes to the fleet. The snapshot keeps the fleet's boats as they were when
+ * it was taken, together with the expenses of each boat read at that time, so its totals always match
+ * the sum of its boats even while boats are added, removed or spent on.
+ * <p>
+ * Taking a snapshot takes no lock while reading the expenses. Expenses posted while the snapshot is
+ * being taken are either seen in full or not at all for each boat.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class FleetSnapshot {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The boats of the fleet, in the order they were added; shared with the fleet and never changed
+     */
+    private final Boat[] boats;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The expenses of each boat when the snapshot was taken, in cents
+     */
+    private final long[] expensesCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The total purchase price of the boats, in cents
+     */
+    private final long totalPurchaseCostCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The total expenses of the boats when the snapshot was taken, in cents
+     */
+    private final long totalSpentCents;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that takes a snapshot of the given boats, reading the expenses of each.
+     * @param fleetBoats The boats of the fleet, in an array that is never changed afterwards
+     */
+    FleetSnapshot(Boat[] fleetBoats) {
+
+        boats = fleetBoats;
+        expensesCents = new long[fleetBoats.length];
+
+        long purchaseCost = 0;
+        long spent = 0;
+        for (int i = 0; i < fleetBoats.length; i++) {
+            expensesCents[i] = fleetBoats[i].getExpensesCents();
+            purchaseCost += fleetBoats[i].getPurchasePriceCents();
+            spent += expensesCents[i];
+        }
+        totalPurchaseCostCents = purchaseCost;
+        totalSpentCents = spent;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a snapshot from boats whose expenses were already read.
+     * @param snapshotBoats The boats, in an array that is never changed afterwards
+     * @param snapshotExpensesCents The expenses of each boat, in cents
+     */
+    private FleetSnapshot(Boat[] snapshotBoats, long[] snapshotExpensesCents) {
+
+        boats = snapshotBoats;
+        expensesCents = snapshotExpensesCents;
+
+        long purchaseCost = 0;
+        long spent = 0;
+        for (int i = 0; i < snapshotBoats.length; i++) {
+            purchaseCost += snapshotBoats[i].getPurchasePriceCents();
+            spent += snapshotExpensesCents[i];
+        }
+        totalPurchaseCostCents = purchaseCost;
+        totalSpentCents = spent;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns a snapshot of some of the boats of this one, with the expenses this snapshot read for them.
+     * @param positions The positions of the boats to keep, in the order they are wanted
+     * @param count The number of positions to use
+     * @return The smaller snapshot
+     */
+    FleetSnapshot subset(int[] positions, int count) {
+
+        Boat[] subsetBoats = new Boat[count];
+        long[] subsetExpenses = new long[count];
+        for (int i = 0; i < count; i++) {
+            subsetBoats[i] = boats[positions[i]];
+            subsetExpenses[i] = expensesCents[positions[i]];
+        }
+
+        return new FleetSnapshot(subsetBoats, subsetExpenses);
+
+    } // end of the subset method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the number of boats in the snapshot.
+     * @return The number of boats
+     */
+    public int size() {
+
+        return boats.length;
+
+    } // end of the size method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns one boat of the snapshot.
+     * @param index The position of the boat, in the order boats were added
+     * @return The boat
+     */
+    public Boat getBoat(int index) {
+
+        return boats[index];
+
+    } // end of the getBoat method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the expenses of one boat when the snapshot was taken.
+     * @param index The position of the boat, in the order boats were added
+     * @return The expenses of the boat, in cents
+     */
+    public long getExpensesCents(int index) {
+
+        return expensesCents[index];
+
+    } // end of the getExpensesCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the boats of the snapshot.
+     * @return A read-only list of the boats, in the order they were added
+     */
+    public List<Boat> getBoats() {
+
+        return Collections.unmodifiableList(Arrays.asList(boats));
+
+    } // end of the getBoats method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total purchase cost of the boats in cents.
+     * @return The total purchase cost, in cents
+     */
+    public long totalPurchaseCostCents() {
+
+        return totalPurchaseCostCents;
+
+    } // end of the totalPurchaseCostCents method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the total expenses of the boats when the snapshot was taken, in cents.
+     * @return The total expenses, in cents
+     */
+    public long totalSpentCents() {
+
+        return totalSpentCents;
+
+    } // end of the totalSpentCents method
+    //----------------------------------------------------------------------------------------------------
+} // end of the FleetSnapshot class
+//========================================================================================================
@@ -0,0 +1,134 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+//========================================================================================================
+/**
+ * Keeps the fleet in one file written with Java serialization, the program's original database
+ * format. The file holds the journal generation followed by the serialized fleet. It is much slower
+ * and larger than the binary format and is kept for comparison and for tools that read serialized
+ * fleets.
+ *
+ * @author Hashim Shahzad Khan
+ */
+public class SerializedFleetRepository implements FleetRepository {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The size of the buffers used to read and write the file
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The file the fleet is saved in
+     */
+    private final Path file;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates a repository kept in the given file.
+     * @param serializedFile The file the fleet is saved in
+     */
+    public SerializedFleetRepository(Path serializedFile) {
+
+        file = serializedFile;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the name of the format.
+     * @return "Serialization"
+     */
+    @Override
+    public String getName() {
+
+        return "Serialization";
+
+    } // end of the getName method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the file the fleet is saved in.
+     * @return The file
+     */
+    @Override
+    public Path getFile() {
+
+        return file;
+
+    } // end of the getFile method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Reads the journal generation from the start of the file.
+     * @return The journal generation, or -1 if there is no file or it cannot be read
+     */
+    @Override
+    public long readGeneration() {
+
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file))) {
+            return in.readLong();
+        } catch (IOException e) {
+            return -1;
+        }
+
+    } // end of the readGeneration method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Loads the fleet from the file.
+     * @param fleet The fleet to add the boats to
+     * @return The journal generation stored in the file
+     * @throws IOException If the file cannot be read or does not hold a fleet
+     */
+    @Override
+    public long load(Fleet fleet) throws IOException {
+
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            long journalGeneration = in.readLong();
+            Fleet loadedFleet = (Fleet) in.readObject();
+            fleet.addSavedBoats(loadedFleet.getBoats());
+            for (String message : loadedFleet.getNameConflicts()) {
+                fleet.noteNameConflict(message);
+            }
+            return journalGeneration;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new StreamCorruptedException("Serialized file does not hold a fleet");
+        }
+
+    } // end of the load method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Serializes the snapshot to a temporary file, forces it to the disk and renames it over the file.
+     * The boats are copied with the expenses the snapshot read, since serializing the fleet's own boats
+     * would record expenses posted after the snapshot was taken.
+     * @param snapshot The snapshot of the fleet
+     * @param journalGeneration The generation of the journal that records changes made after the snapshot
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void save(FleetSnapshot snapshot, long journalGeneration) throws IOException {
+
+        Fleet copy = new Fleet();
+        for (int i = 0; i < snapshot.size(); i++) {
+            Boat boat = snapshot.getBoat(i);
+            copy.addBoat(Boat.withCents(boat.getType(), boat.getName(), boat.getYearOfManufacture(),
+                    boat.getMakeModel(), boat.getLengthInFeet(), boat.getPurchasePriceCents(),
+                    snapshot.getExpensesCents(i)));
+        }
+
+        Path temporaryFile = FleetRepository.temporaryFile(file);
+        try (FileOutputStream output = new FileOutputStream(temporaryFile.toFile())) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+            out.writeLong(journalGeneration);
+            out.writeObject(copy);
+            out.flush();
+            output.getFD().sync();
+        }
+        FleetRepository.replaceFile(temporaryFile, file);
+
+    } // end of the save method
+    //----------------------------------------------------------------------------------------------------
+} // end of the SerializedFleetRepository class
+//========================================================================================================
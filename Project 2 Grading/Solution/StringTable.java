@@ -0,0 +1,114 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+//========================================================================================================
+/**
+ * A hash table from UTF-8 byte sequences to the Strings they decode to, used while loading a fleet so
+ * that repeated values such as make/model share a single String. Looking up a sequence that was seen
+ * before returns the existing String without decoding or allocating anything.
+ * <p>
+ * The first time a sequence is seen, its String is interned, so every table, and every other part of
+ * the program that interns its Strings, hands out the same instance for the same value. A fleet loaded
+ * from a database, replayed from the journal and synced with a CSV manifest therefore keeps one copy
+ * of each make/model, however many loads it came from. Interned Strings that are no longer used are
+ * reclaimed by the garbage collector.
+ * <p>
+ * A table is used by one thread at a time and lives for one load, so it never outgrows the number of
+ * distinct values in what is being loaded.
+ *
+ * @author Hashim Shahzad Khan
+ */
+class StringTable {
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The encoded bytes of each entry, indexed by slot; null marks an empty slot
+     */
+    private byte[][] keys;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The decoded String of each entry, indexed by slot
+     */
+    private String[] values;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * The number of entries in the table
+     */
+    private int size;
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Constructor that creates an empty table.
+     */
+    StringTable() {
+
+        keys = new byte[64][];
+        values = new String[64];
+        size = 0;
+
+    } // end of the constructor
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Returns the String for a byte sequence, creating and interning it the first time it is seen.
+     * @param buffer The buffer holding the bytes
+     * @param start The position of the first byte
+     * @param end The position just past the last byte
+     * @return The shared String for the bytes
+     */
+    String get(byte[] buffer, int start, int end) {
+
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+
+        int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null) {
+            byte[] key = keys[slot];
+            if (Arrays.equals(key, 0, key.length, buffer, start, end)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = new String(buffer, start, end - start, StandardCharsets.UTF_8).intern();
+        keys[slot] = Arrays.copyOfRange(buffer, start, end);
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+
+        return value;
+
+    } // end of the get method
+    //----------------------------------------------------------------------------------------------------
+    /**
+     * Doubles the number of slots and re-inserts every entry.
+     */
+    private void resize() {
+
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldValues.length * 2];
+        int mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            byte[] key = oldKeys[i];
+            if (key == null) {
+                continue;
+            }
+            int hash = 1;
+            for (byte b : key) {
+                hash = 31 * hash + b;
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+
+    } // end of the resize method
+    //----------------------------------------------------------------------------------------------------
+} // end of the StringTable class
+//========================================================================================================